@@ -0,0 +1,42 @@
+package com.github.skopylov58.jdbc.pool;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Pool factory for benchmarks.
+ */
+final class BenchmarkPools {
+
+    static final String H2 = "jdbc:h2:mem:jmh";
+
+    private BenchmarkPools() {}
+
+    /**
+     * Starts the pool and waits until all its connections are opened,
+     * so connection acquiring does not disturb measurements.
+     * @param cnf pool configurator
+     * @return started pool
+     * @throws SQLException if pool could not open its connections
+     */
+    static SimpleJDBCConnectionPool start(Consumer<SimpleJDBCConnectionPool.Config> cnf) throws SQLException {
+        SimpleJDBCConnectionPool.Config config = new SimpleJDBCConnectionPool.Config();
+        cnf.accept(config);
+
+        SimpleJDBCConnectionPool pool = new SimpleJDBCConnectionPool(H2);
+        pool.configure(cnf);
+        pool.start();
+
+        List<Connection> warm = new ArrayList<>();
+        for (int i = 0; i < config.poolSize; i++) {
+            warm.add(pool.getConnection());
+        }
+        for (Connection c : warm) {
+            c.close();
+        }
+        return pool;
+    }
+}
@@ -0,0 +1,79 @@
+package com.github.skopylov58.jdbc.pool;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput and latency of the getConnection()/close() cycle for different number of clients.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class CheckoutBenchmark {
+
+    @Param({"5", "20"})
+    int poolSize;
+
+    SimpleJDBCConnectionPool pool;
+
+    @Setup
+    public void setup() throws Exception {
+        pool = BenchmarkPools.start(c -> {
+            c.poolSize = poolSize;
+            c.validateConnectionOnCheckout = false;
+        });
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.stop();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Connection threads1() throws SQLException {
+        return checkout();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Connection threads4() throws SQLException {
+        return checkout();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public Connection threads16() throws SQLException {
+        return checkout();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public Connection threads64() throws SQLException {
+        return checkout();
+    }
+
+    private Connection checkout() throws SQLException {
+        Connection con = pool.getConnection();
+        con.close();
+        return con;
+    }
+}
@@ -0,0 +1,98 @@
+package com.github.skopylov58.jdbc.pool;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Slow path of the exhausted pool.
+ * <ul>
+ * <li>{@code handoff} - many clients compete for few connections,
+ * so most checkouts wait for the connection returned by another client</li>
+ * <li>{@code timeout} - all connections are checked out,
+ * so checkout fails after timeout elapsed</li>
+ * </ul>
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class ExhaustedPoolBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Contended {
+        SimpleJDBCConnectionPool pool;
+
+        @Setup
+        public void setup() throws Exception {
+            pool = BenchmarkPools.start(c -> {
+                c.poolSize = 2;
+                c.validateConnectionOnCheckout = false;
+            });
+        }
+
+        @TearDown
+        public void tearDown() {
+            pool.stop();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Drained {
+        static final Duration TIMEOUT = Duration.ofMillis(1);
+
+        SimpleJDBCConnectionPool pool;
+        Connection held;
+
+        @Setup
+        public void setup() throws Exception {
+            pool = BenchmarkPools.start(c -> {
+                c.poolSize = 1;
+                c.validateConnectionOnCheckout = false;
+            });
+            held = pool.getConnection();
+        }
+
+        @TearDown
+        public void tearDown() throws SQLException {
+            held.close();
+            pool.stop();
+        }
+    }
+
+    @Benchmark
+    @Threads(16)
+    public Connection handoff(Contended state) throws SQLException {
+        Connection con = state.pool.getConnection();
+        Blackhole.consumeCPU(100);
+        con.close();
+        return con;
+    }
+
+    @Benchmark
+    @Threads(1)
+    public SQLException timeout(Drained state) {
+        try {
+            state.pool.getConnection(Drained.TIMEOUT).close();
+            throw new IllegalStateException("Pool is expected to be exhausted");
+        } catch (SQLException e) {
+            return e;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.github.skopylov58.jdbc.pool;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of the {@code detectOrphanConnections} option.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+@Threads(4)
+public class OrphanDetectionBenchmark {
+
+    @Param({"false", "true"})
+    boolean detectOrphanConnections;
+
+    SimpleJDBCConnectionPool pool;
+
+    @Setup
+    public void setup() throws Exception {
+        pool = BenchmarkPools.start(c -> {
+            c.poolSize = 10;
+            c.validateConnectionOnCheckout = false;
+            c.detectOrphanConnections = detectOrphanConnections;
+            c.orphanTimeout = Duration.ofMinutes(10);
+        });
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.stop();
+    }
+
+    @Benchmark
+    public Connection checkout() throws SQLException {
+        Connection con = pool.getConnection();
+        con.close();
+        return con;
+    }
+}
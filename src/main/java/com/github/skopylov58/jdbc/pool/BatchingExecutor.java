@@ -0,0 +1,282 @@
+package com.github.skopylov58.jdbc.pool;
+
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTransientException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import javax.sql.DataSource;
+
+/**
+ * Write-behind executor which coalesces small writes into JDBC batches.
+ *
+ * Clients submit parameterized statements and get futures of the update counts.
+ * Few drainer threads, each using one pooled connection at time, collect submissions
+ * up to {@link Config#batchSize} statements or {@link Config#linger} time, group consecutive statements
+ * with the same SQL, execute each group with {@code addBatch/executeBatch} and commit once per batch.
+ * Statements are never reordered within a drainer, so with the single drainer dependent writes
+ * are executed in the submission order. Several drainers execute their batches concurrently.
+ * <p>
+ * If some statement of the batch fails, the transaction is rolled back, futures of the failed statements
+ * complete exceptionally and the rest of the batch is executed again, so each future reflects its own statement.
+ *
+ * @author skopylov@gmail.com
+ *
+ */
+public class BatchingExecutor {
+
+    private static final Logger logger = System.getLogger(BatchingExecutor.class.getName());
+
+    private final DataSource dataSource;
+    private final Config config = new Config();
+    private BlockingQueue<Item> queue;
+    private final List<Thread> drainers = new ArrayList<>();
+    private volatile boolean stopped;
+
+    /**
+     * Submitted statement.
+     */
+    private record Item(String sql, Object[] params, CompletableFuture<Integer> future) {
+    }
+
+    /**
+     * Constructor.
+     * @param dataSource data source of the connections, usually {@link SimpleJDBCConnectionPool}
+     */
+    public BatchingExecutor(DataSource dataSource) {
+        this.dataSource = Objects.requireNonNull(dataSource);
+    }
+
+    /**
+     * Configures the executor, should be called before {@link #start()}.
+     * @param cnf configuration
+     */
+    public void configure(Consumer<Config> cnf) {
+        cnf.accept(config);
+    }
+
+    /**
+     * Starts drainer threads.
+     */
+    public synchronized void start() {
+        queue = new ArrayBlockingQueue<>(config.queueCapacity);
+        for (int i = 0; i < config.drainers; i++) {
+            Thread t = new Thread(this::drain, "simple-jdbc-pool-batch-" + i);
+            t.setDaemon(true);
+            t.start();
+            drainers.add(t);
+        }
+    }
+
+    /**
+     * Stops accepting statements, executes already submitted ones and stops drainer threads.
+     * @throws InterruptedException if interrupted while waiting for drainers
+     */
+    public synchronized void stop() throws InterruptedException {
+        stopped = true;
+        for (Thread t : drainers) {
+            t.join();
+        }
+        drainers.clear();
+        Item item;
+        while (queue != null && (item = queue.poll()) != null) {
+            item.future.completeExceptionally(new SQLException("Batching executor is stopped"));
+        }
+    }
+
+    /**
+     * Submits parameterized statement for the batched execution.
+     * @param sql SQL statement
+     * @param params statement parameters
+     * @return future of the statement's update count, completes exceptionally with {@link SQLException}
+     * if statement failed or with {@link SQLTransientException} if submission queue is full
+     */
+    public CompletableFuture<Integer> submit(String sql, Object... params) {
+        CompletableFuture<Integer> future = new CompletableFuture<>();
+        BlockingQueue<Item> q = queue;
+        if (stopped || q == null) {
+            future.completeExceptionally(new SQLException("Batching executor is not running"));
+            return future;
+        }
+        Item item = new Item(Objects.requireNonNull(sql), params, future);
+        if (!q.offer(item)) {
+            future.completeExceptionally(new SQLTransientException("Batch queue is full"));
+        } else if (stopped && q.remove(item)) {
+            // stopped while offering, queue could be already drained by stop()
+            future.completeExceptionally(new SQLException("Batching executor is not running"));
+        }
+        return future;
+    }
+
+    /**
+     * @return number of statements waiting for execution
+     */
+    public int getQueuedStatements() {
+        BlockingQueue<Item> q = queue;
+        return q == null ? 0 : q.size();
+    }
+
+    /**
+     * Drainer thread loop.
+     */
+    private void drain() {
+        List<Item> batch = new ArrayList<>(config.batchSize);
+        while (!stopped || !queue.isEmpty()) {
+            try {
+                Item first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + config.linger.toNanos();
+                while (batch.size() < config.batchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    Item next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                stopped = true;
+            }
+            if (!batch.isEmpty()) {
+                execute(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Executes batch in the single transaction.
+     * @param items submitted statements
+     */
+    private void execute(List<Item> items) {
+        List<Item> pending = new ArrayList<>(items);
+        try (Connection c = dataSource.getConnection()) {
+            boolean autoCommit = c.getAutoCommit();
+            c.setAutoCommit(false);
+            try {
+                while (!pending.isEmpty()) {
+                    if (executeOnce(c, pending)) {
+                        break;
+                    }
+                }
+            } finally {
+                c.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException | RuntimeException e) {
+            logger.log(Level.DEBUG, "Batch failed", e);
+            pending.forEach(i -> i.future.completeExceptionally(e));
+        }
+    }
+
+    /**
+     * Executes runs of consecutive statements with the same SQL and commits.
+     * On failure, rolls back, fails futures of the failed statements
+     * and removes them from the pending list.
+     * @param c connection
+     * @param pending statements to execute
+     * @return true if all pending statements were committed
+     * @throws SQLException if transaction could not be committed or rolled back
+     */
+    private boolean executeOnce(Connection c, List<Item> pending) throws SQLException {
+        List<List<Item>> groups = new ArrayList<>();
+        List<Item> run = null;
+        for (Item item : pending) {
+            if (run == null || !run.get(0).sql.equals(item.sql)) {
+                run = new ArrayList<>();
+                groups.add(run);
+            }
+            run.add(item);
+        }
+        Map<Item, Integer> counts = new LinkedHashMap<>();
+        for (List<Item> groupItems : groups) {
+            try (PreparedStatement ps = c.prepareStatement(groupItems.get(0).sql)) {
+                for (Item item : groupItems) {
+                    Object[] params = item.params;
+                    for (int i = 0; params != null && i < params.length; i++) {
+                        ps.setObject(i + 1, params[i]);
+                    }
+                    ps.addBatch();
+                }
+                int[] result = ps.executeBatch();
+                for (int i = 0; i < groupItems.size(); i++) {
+                    counts.put(groupItems.get(i), i < result.length ? result[i] : Statement.SUCCESS_NO_INFO);
+                }
+            } catch (BatchUpdateException e) {
+                c.rollback();
+                removeFailed(pending, groupItems, e);
+                return false;
+            } catch (SQLException e) {
+                // statement could not be prepared or executed at all, fail the whole group
+                c.rollback();
+                for (Item item : groupItems) {
+                    item.future.completeExceptionally(e);
+                    pending.remove(item);
+                }
+                return false;
+            }
+        }
+        c.commit();
+        counts.forEach((item, count) -> item.future.complete(count));
+        pending.clear();
+        return true;
+    }
+
+    /**
+     * Fails futures of the statements which caused batch update failure.
+     * Drivers either mark failed statements with {@link Statement#EXECUTE_FAILED} or stop on the first failure,
+     * in latter case the first statement without update count is considered failed.
+     * @param pending statements to execute
+     * @param groupItems statements of the failed batch
+     * @param e batch update exception
+     */
+    private void removeFailed(List<Item> pending, List<Item> groupItems, BatchUpdateException e) {
+        int[] result = e.getUpdateCounts();
+        int n = result == null ? 0 : result.length;
+        List<Item> failed = new ArrayList<>();
+        for (int i = 0; i < n && i < groupItems.size(); i++) {
+            if (result[i] == Statement.EXECUTE_FAILED) {
+                failed.add(groupItems.get(i));
+            }
+        }
+        if (failed.isEmpty()) {
+            failed.add(groupItems.get(Math.min(n, groupItems.size() - 1)));
+        }
+        for (Item item : failed) {
+            item.future.completeExceptionally(e);
+            pending.remove(item);
+        }
+    }
+
+    /**
+     * Batching configuration.
+     */
+    public static class Config {
+        /** Max number of statements executed in one batch and committed together. */
+        public int batchSize = 100;
+        /** How long drainer waits for more statements before executing incomplete batch. */
+        public Duration linger = Duration.ofMillis(5);
+        /** Number of drainer threads, each uses one connection at time. */
+        public int drainers = 1;
+        /** Max number of submitted statements waiting for execution. */
+        public int queueCapacity = 10_000;
+    }
+}
@@ -0,0 +1,80 @@
+package com.github.skopylov58.jdbc.pool;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Circuit breaker driven by consecutive database failures.
+ *
+ * <ul>
+ * <li>CLOSED - database is healthy, failures are counted</li>
+ * <li>OPEN - number of consecutive failures reached the threshold, clients are rejected immediately</li>
+ * <li>HALF_OPEN - single probe is checking if the database answers again</li>
+ * </ul>
+ * Any success resets failure counter, success in the HALF_OPEN state closes the breaker,
+ * failure in the HALF_OPEN state opens it again.
+ *
+ * @author skopylov@gmail.com
+ *
+ */
+public final class CircuitBreaker {
+
+    /**
+     * Circuit breaker state.
+     */
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+    private final AtomicInteger failures = new AtomicInteger();
+
+    CircuitBreaker() {}
+
+    /**
+     * Records database failure.
+     * @param threshold number of consecutive failures which opens the breaker, 0 means breaker is disabled
+     * @return true if this failure opened the breaker
+     */
+    boolean recordFailure(int threshold) {
+        if (threshold <= 0) {
+            return false;
+        }
+        if (state.compareAndSet(State.HALF_OPEN, State.OPEN)) {
+            return true;
+        }
+        return failures.incrementAndGet() >= threshold
+                && state.compareAndSet(State.CLOSED, State.OPEN);
+    }
+
+    /**
+     * Records database success.
+     * @return true if this success closed the breaker
+     */
+    boolean recordSuccess() {
+        failures.set(0);
+        return state.get() == State.HALF_OPEN && state.compareAndSet(State.HALF_OPEN, State.CLOSED);
+    }
+
+    /**
+     * Moves open breaker to the half-open state, so caller could probe the database.
+     * @return true if caller is the probe
+     */
+    boolean tryHalfOpen() {
+        return state.compareAndSet(State.OPEN, State.HALF_OPEN);
+    }
+
+    /**
+     * @return true if database is not considered healthy
+     */
+    boolean isOpen() {
+        return state.get() != State.CLOSED;
+    }
+
+    /**
+     * @return current state
+     */
+    State getState() {
+        return state.get();
+    }
+}
@@ -0,0 +1,332 @@
+package com.github.skopylov58.jdbc.pool;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntConsumer;
+import java.util.stream.Collectors;
+
+/**
+ * Lock-free borrow/return container for pooled entries.
+ *
+ * Borrowing looks up entries in the following order:
+ * <ul>
+ * <li>thread-local list of entries recently returned by the current thread</li>
+ * <li>CAS based scan of the shared entry list</li>
+ * <li>hand-off queue where the thread parks until some entry is returned</li>
+ * </ul>
+ * Entry ownership is controlled by the entry's state, so neither borrowing nor returning
+ * takes any locks unless the caller has to wait.
+ * <p>
+ * Waiting does not use monitors, so it does not pin carrier threads of virtual threads.
+ * Virtual threads are short living and numerous, so they bypass the thread-local list.
+ *
+ * @author skopylov@gmail.com
+ *
+ * @param <T> entry type
+ */
+class ConcurrentBag<T extends ConcurrentBag.Entry> {
+
+    /** Entry is available for borrowing. */
+    static final int STATE_NOT_IN_USE = 0;
+    /** Entry is borrowed. */
+    static final int STATE_IN_USE = 1;
+    /** Entry has been removed from the bag. */
+    static final int STATE_REMOVED = -1;
+    /** Entry is temporarily reserved by the pool itself. */
+    static final int STATE_RESERVED = -2;
+
+    private static final int MAX_THREAD_LOCAL_ENTRIES = 16;
+    private static final MethodHandle IS_VIRTUAL = findIsVirtual();
+    /** Handed over instead of entry to wake up waiting thread. */
+    private static final Object WAKEUP = new Object();
+
+    /**
+     * Entry that could be kept in the bag.
+     */
+    interface Entry {
+        int getState();
+        void setState(int newState);
+        boolean compareAndSetState(int expected, int newState);
+    }
+
+    private final CopyOnWriteArrayList<T> shared = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<List<WeakReference<T>>> threadList = ThreadLocal.withInitial(ArrayList::new);
+    private final SynchronousQueue<Object> handoffQueue = new SynchronousQueue<>(true);
+    private final AtomicInteger waiters = new AtomicInteger();
+    private final AtomicInteger wakeups = new AtomicInteger();
+    private final IntConsumer waitListener;
+    private volatile boolean closed;
+
+    /**
+     * Constructor.
+     * @param waitListener is notified with number of waiting threads
+     * when some thread did not find available entry and is going to wait
+     */
+    ConcurrentBag(IntConsumer waitListener) {
+        this.waitListener = waitListener;
+    }
+
+    /**
+     * Adds new entry to the bag.
+     * @param entry entry to add
+     */
+    void add(T entry) {
+        if (closed) {
+            throw new IllegalStateException("Bag is closed");
+        }
+        shared.add(entry);
+        handoff(entry);
+    }
+
+    /**
+     * Borrows entry from the bag.
+     * @param timeout how long to wait for the available entry
+     * @param unit timeout unit
+     * @return borrowed entry or null if timeout elapsed or waiting thread was woken up by {@link #wakeWaiters()}
+     * @throws InterruptedException if thread was interrupted while waiting
+     */
+    @SuppressWarnings("unchecked")
+    T borrow(long timeout, TimeUnit unit) throws InterruptedException {
+        if (!isVirtualThread()) {
+            List<WeakReference<T>> list = threadList.get();
+            for (int i = list.size() - 1; i >= 0; i--) {
+                T entry = list.remove(i).get();
+                if (entry != null && entry.compareAndSetState(STATE_NOT_IN_USE, STATE_IN_USE)) {
+                    return entry;
+                }
+            }
+        }
+
+        int wakeup = wakeups.get();
+        int waiting = waiters.incrementAndGet();
+        try {
+            T entry = scanShared();
+            if (entry != null) {
+                return entry;
+            }
+            waitListener.accept(waiting);
+
+            long nanosTimeout = unit.toNanos(timeout);
+            while (nanosTimeout > 0) {
+                if (wakeups.get() != wakeup) {
+                    return null;
+                }
+                long start = System.nanoTime();
+                Object handedOver = handoffQueue.poll(nanosTimeout, TimeUnit.NANOSECONDS);
+                if (handedOver == null || handedOver == WAKEUP) {
+                    return null;
+                }
+                entry = (T) handedOver;
+                if (entry.compareAndSetState(STATE_NOT_IN_USE, STATE_IN_USE)) {
+                    return entry;
+                }
+                nanosTimeout -= System.nanoTime() - start;
+            }
+            return null;
+        } finally {
+            waiters.decrementAndGet();
+        }
+    }
+
+    /**
+     * Borrows first available entry from the shared list.
+     * @return borrowed entry or null
+     */
+    private T scanShared() {
+        for (T entry : shared) {
+            // read before CAS to not steal cache line when many waiters scan the list
+            if (entry.getState() == STATE_NOT_IN_USE && entry.compareAndSetState(STATE_NOT_IN_USE, STATE_IN_USE)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns previously borrowed entry to the bag.
+     * @param entry entry to return
+     */
+    void requite(T entry) {
+        entry.setState(STATE_NOT_IN_USE);
+        if (handoff(entry) || isVirtualThread()) {
+            return;
+        }
+        List<WeakReference<T>> list = threadList.get();
+        if (list.size() < MAX_THREAD_LOCAL_ENTRIES) {
+            list.add(new WeakReference<>(entry));
+        }
+    }
+
+    /**
+     * Removes borrowed or reserved entry from the bag.
+     * @param entry entry to remove
+     * @return true if entry was removed
+     */
+    boolean remove(T entry) {
+        if (!entry.compareAndSetState(STATE_IN_USE, STATE_REMOVED)
+                && !entry.compareAndSetState(STATE_RESERVED, STATE_REMOVED)
+                && !closed) {
+            return false;
+        }
+        return shared.remove(entry);
+    }
+
+    /**
+     * Reserves idle entry, so it can not be borrowed until it is unreserved or removed.
+     * @param entry entry to reserve
+     * @return true if entry was reserved
+     */
+    boolean reserve(T entry) {
+        return entry.compareAndSetState(STATE_NOT_IN_USE, STATE_RESERVED);
+    }
+
+    /**
+     * Makes previously reserved entry available for borrowing again.
+     * @param entry entry to unreserve
+     */
+    void unreserve(T entry) {
+        if (entry.compareAndSetState(STATE_RESERVED, STATE_NOT_IN_USE)) {
+            handoff(entry);
+        }
+    }
+
+    /**
+     * Gets snapshot of entries in the given state.
+     * @param state entry state
+     * @return list of entries
+     */
+    List<T> values(int state) {
+        return shared.stream()
+                .filter(e -> e.getState() == state)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Gets snapshot of all entries.
+     * @return list of entries
+     */
+    List<T> values() {
+        return new ArrayList<>(shared);
+    }
+
+    /**
+     * Counts entries in the given state.
+     * @param state entry state
+     * @return number of entries
+     */
+    int getCount(int state) {
+        int count = 0;
+        for (T e : shared) {
+            if (e.getState() == state) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return total number of entries in the bag
+     */
+    int size() {
+        return shared.size();
+    }
+
+    /**
+     * @return number of threads waiting for the entry
+     */
+    int getWaitingThreadCount() {
+        return waiters.get();
+    }
+
+    /**
+     * Closes the bag, so no new entries could be added.
+     */
+    void close() {
+        closed = true;
+    }
+
+    /**
+     * @return true if bag is closed
+     */
+    boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Clears the bag.
+     */
+    void clear() {
+        shared.clear();
+    }
+
+    /**
+     * Wakes up threads waiting in {@link #borrow(long, TimeUnit)}, so they could re-check their conditions.
+     * Woken up threads get null as if their timeout elapsed.
+     * Threads which are about to park see changed wake-up counter instead, so caller does not wait for them,
+     * caller itself could be counted as waiting thread.
+     */
+    void wakeWaiters() {
+        wakeups.incrementAndGet();
+        for (int n = waiters.get(), i = 0; n > 0 && i < 0x100 && waiters.get() > 0; i++) {
+            if (handoffQueue.offer(WAKEUP)) {
+                n--;
+            } else {
+                Thread.yield();
+            }
+        }
+    }
+
+    /**
+     * Gives available entry to the waiting thread if there are any.
+     * @param entry available entry
+     * @return true if entry was taken by another thread
+     */
+    private boolean handoff(T entry) {
+        for (int i = 0; waiters.get() > 0; i++) {
+            if (entry.getState() != STATE_NOT_IN_USE || handoffQueue.offer(entry)) {
+                return true;
+            }
+            if ((i & 0xff) == 0xff) {
+                LockSupport.parkNanos(10_000);
+            } else {
+                Thread.yield();
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if current thread is virtual
+     */
+    static boolean isVirtualThread() {
+        if (IS_VIRTUAL == null) {
+            return false;
+        }
+        try {
+            return (boolean) IS_VIRTUAL.invokeExact(Thread.currentThread());
+        } catch (Throwable e) {
+            return false;
+        }
+    }
+
+    /**
+     * Looks up Thread.isVirtual() which is available since Java 21.
+     * @return method handle or null if there are no virtual threads
+     */
+    private static MethodHandle findIsVirtual() {
+        try {
+            return MethodHandles.publicLookup().findVirtual(Thread.class, "isVirtual", MethodType.methodType(boolean.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        }
+    }
+}
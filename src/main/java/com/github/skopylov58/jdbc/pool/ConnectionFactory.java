@@ -0,0 +1,189 @@
+package com.github.skopylov58.jdbc.pool;
+
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Objects;
+import java.util.Properties;
+
+import javax.sql.DataSource;
+
+/**
+ * Creates physical database connections for the pool.
+ *
+ * Use {@link #of(String, Properties)} to connect with JDBC driver, {@link #of(DataSource)}
+ * to get connections from the vendor's data source, or implement this interface to provide
+ * connections in your own way, for example in tests.
+ *
+ * @author skopylov@gmail.com
+ *
+ */
+@FunctionalInterface
+public interface ConnectionFactory {
+
+    /**
+     * Creates new physical connection.
+     * @return new connection
+     * @throws SQLException if connection could not be created
+     */
+    Connection createConnection() throws SQLException;
+
+    /**
+     * Creates new physical connection with given credentials.
+     * @param user database user
+     * @param password user's password
+     * @return new connection
+     * @throws SQLException if connection could not be created
+     * @throws SQLFeatureNotSupportedException if factory does not support credentials
+     */
+    default Connection createConnection(String user, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Connection factory does not support credentials");
+    }
+
+    /**
+     * Creates factory which connects with JDBC driver.
+     * @param url database URL
+     * @return connection factory
+     */
+    static ConnectionFactory of(String url) {
+        return new DriverConnectionFactory(url, new Properties());
+    }
+
+    /**
+     * Creates factory which connects with JDBC driver.
+     * @param url database URL
+     * @param info connection properties, copied by the factory
+     * @return connection factory
+     */
+    static ConnectionFactory of(String url, Properties info) {
+        Properties props = new Properties();
+        props.putAll(info);
+        return new DriverConnectionFactory(url, props);
+    }
+
+    /**
+     * Creates factory which connects with JDBC driver.
+     * @param url database URL
+     * @param user database user
+     * @param password user's password
+     * @return connection factory
+     */
+    static ConnectionFactory of(String url, String user, String password) {
+        Properties props = new Properties();
+        if (user != null) {
+            props.put("user", user);
+        }
+        if (password != null) {
+            props.put("password", password);
+        }
+        return new DriverConnectionFactory(url, props);
+    }
+
+    /**
+     * Creates factory which gets connections from the data source.
+     * @param dataSource non pooling data source
+     * @return connection factory
+     */
+    static ConnectionFactory of(DataSource dataSource) {
+        Objects.requireNonNull(dataSource);
+        return new ConnectionFactory() {
+            @Override
+            public Connection createConnection() throws SQLException {
+                return dataSource.getConnection();
+            }
+
+            @Override
+            public Connection createConnection(String user, String password) throws SQLException {
+                return dataSource.getConnection(user, password);
+            }
+
+            @Override
+            public String toString() {
+                return dataSource.toString();
+            }
+        };
+    }
+
+    /**
+     * Creates factory which gets connections from the data source with given credentials.
+     * @param dataSource non pooling data source
+     * @param user database user
+     * @param password user's password
+     * @return connection factory
+     */
+    static ConnectionFactory of(DataSource dataSource, String user, String password) {
+        Objects.requireNonNull(dataSource);
+        return new ConnectionFactory() {
+            @Override
+            public Connection createConnection() throws SQLException {
+                return dataSource.getConnection(user, password);
+            }
+
+            @Override
+            public Connection createConnection(String otherUser, String otherPassword) throws SQLException {
+                return dataSource.getConnection(otherUser, otherPassword);
+            }
+
+            @Override
+            public String toString() {
+                return dataSource + " as " + user;
+            }
+        };
+    }
+
+    /**
+     * Factory which connects with JDBC driver.
+     * 
+     * Driver is looked up with {@link DriverManager} only once, on the first connect,
+     * then connections are created directly by the driver, avoiding scan of all registered drivers.
+     */
+    final class DriverConnectionFactory implements ConnectionFactory {
+
+        private final String url;
+        private final Properties info;
+        private volatile Driver driver;
+
+        DriverConnectionFactory(String url, Properties info) {
+            this.url = Objects.requireNonNull(url);
+            this.info = info;
+        }
+
+        @Override
+        public Connection createConnection() throws SQLException {
+            return connect(info);
+        }
+
+        @Override
+        public Connection createConnection(String user, String password) throws SQLException {
+            Properties props = new Properties();
+            props.putAll(info);
+            if (user != null) {
+                props.put("user", user);
+            }
+            if (password != null) {
+                props.put("password", password);
+            }
+            return connect(props);
+        }
+
+        private Connection connect(Properties props) throws SQLException {
+            Driver d = driver;
+            if (d == null) {
+                d = DriverManager.getDriver(url);
+                driver = d;
+            }
+            Connection c = d.connect(url, props);
+            if (c == null) {
+                throw new SQLException("Driver " + d.getClass().getName() + " does not accept URL " + url);
+            }
+            return c;
+        }
+
+        @Override
+        public String toString() {
+            return url;
+        }
+    }
+}
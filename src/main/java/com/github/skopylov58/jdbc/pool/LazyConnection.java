@@ -0,0 +1,588 @@
+package com.github.skopylov58.jdbc.pool;
+
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.CallableStatement;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.NClob;
+import java.sql.PreparedStatement;
+import java.sql.SQLClientInfoException;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.sql.Struct;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executor;
+
+/**
+ * Logical connection which takes physical connection from the pool only when it is really needed.
+ *
+ * Physical connection is bound on the first statement creation, metadata call or transaction state change.
+ * While auto-commit is on and there are no open statements, physical connection is returned to the pool
+ * and bound again by the next statement, so connection is held only while statements are executed.
+ * Changes of the session state which pool resets on return (read-only, isolation, catalog, schema etc.),
+ * metadata, LOBs and savepoints pin physical connection until the logical connection is closed.
+ * <p>
+ * Like the JDBC connection itself, logical connection is not thread safe.
+ *
+ * @author skopylov@gmail.com
+ *
+ */
+class LazyConnection implements Connection {
+
+    /**
+     * Takes physical connection from the pool.
+     */
+    @FunctionalInterface
+    interface Binder {
+        Connection bind() throws SQLException;
+    }
+
+    @FunctionalInterface
+    private interface Call<T> {
+        T apply(Connection c) throws SQLException;
+    }
+
+    private final Binder binder;
+    private Connection physical;
+    private Boolean autoCommit; //null until the first binding
+    private boolean defaultAutoCommit;
+    private boolean pinned;
+    private int openStatements;
+    private boolean closed;
+
+    /**
+     * Constructor.
+     * @param binder takes physical connection from the pool
+     */
+    LazyConnection(Binder binder) {
+        this.binder = binder;
+    }
+
+    /**
+     * @return true if physical connection is currently bound
+     */
+    boolean isBound() {
+        return physical != null;
+    }
+
+    private void checkOpen() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection is closed");
+        }
+    }
+
+    /**
+     * Binds physical connection if it is not bound yet.
+     * @return physical connection
+     * @throws SQLException if logical connection is closed or physical connection could not be acquired
+     */
+    private Connection bind() throws SQLException {
+        checkOpen();
+        if (physical == null) {
+            Connection c = binder.bind();
+            try {
+                if (autoCommit == null) {
+                    defaultAutoCommit = c.getAutoCommit();
+                    autoCommit = defaultAutoCommit;
+                } else if (autoCommit != defaultAutoCommit) {
+                    //pool has reset auto-commit on the previous release
+                    c.setAutoCommit(autoCommit);
+                }
+            } catch (SQLException e) {
+                c.close();
+                throw e;
+            }
+            physical = c;
+        }
+        return physical;
+    }
+
+    /**
+     * Returns physical connection to the pool if it is not needed any more.
+     * @throws SQLException if physical connection could not be returned
+     */
+    private void releaseIfIdle() throws SQLException {
+        if (physical != null && openStatements == 0 && !pinned && Boolean.TRUE.equals(autoCommit)) {
+            Connection c = physical;
+            physical = null;
+            c.close();
+        }
+    }
+
+    /**
+     * Calls physical connection and releases it if it is not needed any more.
+     */
+    private <T> T call(Call<T> call) throws SQLException {
+        Connection c = bind();
+        try {
+            return call.apply(c);
+        } finally {
+            releaseIfIdle();
+        }
+    }
+
+    /**
+     * Calls physical connection and pins it until logical connection is closed.
+     */
+    private <T> T pin(Call<T> call) throws SQLException {
+        Connection c = bind();
+        pinned = true;
+        return call.apply(c);
+    }
+
+    private void statementClosed() throws SQLException {
+        if (closed) {
+            return; //statement closed after the connection
+        }
+        openStatements--;
+        releaseIfIdle();
+    }
+
+    private Statement track(Statement s) {
+        openStatements++;
+        return new LazyStatement(s);
+    }
+
+    private PreparedStatement track(PreparedStatement ps) {
+        openStatements++;
+        return new LazyPreparedStatement(ps);
+    }
+
+    private CallableStatement track(CallableStatement cs) {
+        openStatements++;
+        return new LazyCallableStatement(cs);
+    }
+
+    @Override
+    public void close() throws SQLException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        openStatements = 0;
+        if (physical != null) {
+            Connection c = physical;
+            physical = null;
+            c.close();
+        }
+    }
+
+    @Override
+    public boolean isClosed() throws SQLException {
+        return closed;
+    }
+
+    /**
+     * Validates physical connection if it is bound.
+     * Unbound logical connection is valid until closed, physical connection is validated by the pool on binding.
+     */
+    @Override
+    public boolean isValid(int timeout) throws SQLException {
+        if (physical == null) {
+            return !closed;
+        }
+        return physical.isValid(timeout);
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        return pin(c -> c.unwrap(iface));
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || call(c -> c.isWrapperFor(iface));
+    }
+
+    @Override
+    public Statement createStatement() throws SQLException {
+        return track(bind().createStatement());
+    }
+
+    @Override
+    public Statement createStatement(int resultSetType, int resultSetConcurrency) throws SQLException {
+        return track(bind().createStatement(resultSetType, resultSetConcurrency));
+    }
+
+    @Override
+    public Statement createStatement(int resultSetType, int resultSetConcurrency, int resultSetHoldability)
+            throws SQLException {
+        return track(bind().createStatement(resultSetType, resultSetConcurrency, resultSetHoldability));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql) throws SQLException {
+        return track(bind().prepareStatement(sql));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency)
+            throws SQLException {
+        return track(bind().prepareStatement(sql, resultSetType, resultSetConcurrency));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency,
+            int resultSetHoldability) throws SQLException {
+        return track(bind().prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
+        return track(bind().prepareStatement(sql, autoGeneratedKeys));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
+        return track(bind().prepareStatement(sql, columnIndexes));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, String[] columnNames) throws SQLException {
+        return track(bind().prepareStatement(sql, columnNames));
+    }
+
+    @Override
+    public CallableStatement prepareCall(String sql) throws SQLException {
+        return track(bind().prepareCall(sql));
+    }
+
+    @Override
+    public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency)
+            throws SQLException {
+        return track(bind().prepareCall(sql, resultSetType, resultSetConcurrency));
+    }
+
+    @Override
+    public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency,
+            int resultSetHoldability) throws SQLException {
+        return track(bind().prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability));
+    }
+
+    @Override
+    public String nativeSQL(String sql) throws SQLException {
+        return call(c -> c.nativeSQL(sql));
+    }
+
+    @Override
+    public void setAutoCommit(boolean autoCommit) throws SQLException {
+        if (physical == null && this.autoCommit != null && this.autoCommit == autoCommit) {
+            return;
+        }
+        call(c -> {
+            c.setAutoCommit(autoCommit);
+            this.autoCommit = autoCommit;
+            return null;
+        });
+    }
+
+    @Override
+    public boolean getAutoCommit() throws SQLException {
+        if (autoCommit != null && !closed) {
+            return autoCommit;
+        }
+        return call(Connection::getAutoCommit);
+    }
+
+    /**
+     * Commits if physical connection is bound, otherwise there is nothing to commit.
+     */
+    @Override
+    public void commit() throws SQLException {
+        if (physical == null) {
+            checkOpen();
+            return;
+        }
+        call(c -> {
+            c.commit();
+            return null;
+        });
+    }
+
+    /**
+     * Rolls back if physical connection is bound, otherwise there is nothing to roll back.
+     */
+    @Override
+    public void rollback() throws SQLException {
+        if (physical == null) {
+            checkOpen();
+            return;
+        }
+        call(c -> {
+            c.rollback();
+            return null;
+        });
+    }
+
+    @Override
+    public DatabaseMetaData getMetaData() throws SQLException {
+        return pin(Connection::getMetaData);
+    }
+
+    @Override
+    public void setReadOnly(boolean readOnly) throws SQLException {
+        pin(c -> {
+            c.setReadOnly(readOnly);
+            return null;
+        });
+    }
+
+    @Override
+    public boolean isReadOnly() throws SQLException {
+        return call(Connection::isReadOnly);
+    }
+
+    @Override
+    public void setCatalog(String catalog) throws SQLException {
+        pin(c -> {
+            c.setCatalog(catalog);
+            return null;
+        });
+    }
+
+    @Override
+    public String getCatalog() throws SQLException {
+        return call(Connection::getCatalog);
+    }
+
+    @Override
+    public void setTransactionIsolation(int level) throws SQLException {
+        pin(c -> {
+            c.setTransactionIsolation(level);
+            return null;
+        });
+    }
+
+    @Override
+    public int getTransactionIsolation() throws SQLException {
+        return call(Connection::getTransactionIsolation);
+    }
+
+    @Override
+    public SQLWarning getWarnings() throws SQLException {
+        return physical == null ? null : physical.getWarnings();
+    }
+
+    @Override
+    public void clearWarnings() throws SQLException {
+        if (physical != null) {
+            physical.clearWarnings();
+        }
+    }
+
+    @Override
+    public Map<String, Class<?>> getTypeMap() throws SQLException {
+        return call(Connection::getTypeMap);
+    }
+
+    @Override
+    public void setTypeMap(Map<String, Class<?>> map) throws SQLException {
+        pin(c -> {
+            c.setTypeMap(map);
+            return null;
+        });
+    }
+
+    @Override
+    public void setHoldability(int holdability) throws SQLException {
+        pin(c -> {
+            c.setHoldability(holdability);
+            return null;
+        });
+    }
+
+    @Override
+    public int getHoldability() throws SQLException {
+        return call(Connection::getHoldability);
+    }
+
+    @Override
+    public Savepoint setSavepoint() throws SQLException {
+        return pin(Connection::setSavepoint);
+    }
+
+    @Override
+    public Savepoint setSavepoint(String name) throws SQLException {
+        return pin(c -> c.setSavepoint(name));
+    }
+
+    @Override
+    public void rollback(Savepoint savepoint) throws SQLException {
+        bind().rollback(savepoint);
+    }
+
+    @Override
+    public void releaseSavepoint(Savepoint savepoint) throws SQLException {
+        bind().releaseSavepoint(savepoint);
+    }
+
+    @Override
+    public Clob createClob() throws SQLException {
+        return pin(Connection::createClob);
+    }
+
+    @Override
+    public Blob createBlob() throws SQLException {
+        return pin(Connection::createBlob);
+    }
+
+    @Override
+    public NClob createNClob() throws SQLException {
+        return pin(Connection::createNClob);
+    }
+
+    @Override
+    public SQLXML createSQLXML() throws SQLException {
+        return pin(Connection::createSQLXML);
+    }
+
+    @Override
+    public Array createArrayOf(String typeName, Object[] elements) throws SQLException {
+        return pin(c -> c.createArrayOf(typeName, elements));
+    }
+
+    @Override
+    public Struct createStruct(String typeName, Object[] attributes) throws SQLException {
+        return pin(c -> c.createStruct(typeName, attributes));
+    }
+
+    @Override
+    public void setClientInfo(String name, String value) throws SQLClientInfoException {
+        try {
+            bind().setClientInfo(name, value);
+            pinned = true;
+        } catch (SQLClientInfoException e) {
+            throw e;
+        } catch (SQLException e) {
+            throw new SQLClientInfoException(e.getMessage(), null, e);
+        }
+    }
+
+    @Override
+    public void setClientInfo(Properties properties) throws SQLClientInfoException {
+        try {
+            bind().setClientInfo(properties);
+            pinned = true;
+        } catch (SQLClientInfoException e) {
+            throw e;
+        } catch (SQLException e) {
+            throw new SQLClientInfoException(e.getMessage(), null, e);
+        }
+    }
+
+    @Override
+    public String getClientInfo(String name) throws SQLException {
+        return call(c -> c.getClientInfo(name));
+    }
+
+    @Override
+    public Properties getClientInfo() throws SQLException {
+        return call(Connection::getClientInfo);
+    }
+
+    @Override
+    public void setSchema(String schema) throws SQLException {
+        pin(c -> {
+            c.setSchema(schema);
+            return null;
+        });
+    }
+
+    @Override
+    public String getSchema() throws SQLException {
+        return call(Connection::getSchema);
+    }
+
+    @Override
+    public void abort(Executor executor) throws SQLException {
+        if (physical != null) {
+            physical.abort(executor);
+        }
+        close();
+    }
+
+    @Override
+    public void setNetworkTimeout(Executor executor, int milliseconds) throws SQLException {
+        pin(c -> {
+            c.setNetworkTimeout(executor, milliseconds);
+            return null;
+        });
+    }
+
+    @Override
+    public int getNetworkTimeout() throws SQLException {
+        return call(Connection::getNetworkTimeout);
+    }
+
+    /**
+     * Statement which releases physical connection on close if it is not needed any more.
+     */
+    private final class LazyStatement extends DelegatingStatement<Statement> {
+        private boolean closed;
+
+        LazyStatement(Statement statement) {
+            super(LazyConnection.this, statement);
+        }
+
+        @Override
+        public void close() throws SQLException {
+            if (!closed) {
+                closed = true;
+                try {
+                    delegate.close();
+                } finally {
+                    statementClosed();
+                }
+            }
+        }
+    }
+
+    private final class LazyPreparedStatement extends DelegatingPreparedStatement<PreparedStatement> {
+        private boolean closed;
+
+        LazyPreparedStatement(PreparedStatement statement) {
+            super(LazyConnection.this, statement);
+        }
+
+        @Override
+        public void close() throws SQLException {
+            if (!closed) {
+                closed = true;
+                try {
+                    delegate.close();
+                } finally {
+                    statementClosed();
+                }
+            }
+        }
+    }
+
+    private final class LazyCallableStatement extends DelegatingCallableStatement {
+        private boolean closed;
+
+        LazyCallableStatement(CallableStatement statement) {
+            super(LazyConnection.this, statement);
+        }
+
+        @Override
+        public void close() throws SQLException {
+            if (!closed) {
+                closed = true;
+                try {
+                    delegate.close();
+                } finally {
+                    statementClosed();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.github.skopylov58.jdbc.pool;
+
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+
+/**
+ * Adjusts pool size to the measured load.
+ *
+ * Each {@link SimpleJDBCConnectionPool.Config#autotuneInterval} tuner takes checkout arrival rate, mean wait
+ * and mean hold time from the pool metrics and estimates number of clients holding or waiting for connection
+ * by Little's law: demand = arrival rate * (wait time + hold time). Waiting clients are counted because
+ * arrival rate of the exhausted pool is capped by its throughput. Pool is resized to the demand plus headroom,
+ * within configured bounds. When pool is big enough, wait time drops to zero and demand converges
+ * to the number of busy connections.
+ * <ul>
+ * <li>Hysteresis - size is not changed if the difference is within {@code autotuneHysteresis} fraction
+ * of the current size</li>
+ * <li>Step limit - size changes by at most {@code autotuneMaxStep} connections per interval</li>
+ * <li>Back-off - if mean hold time grew by more than {@code autotuneBackoffThreshold} after the pool was grown,
+ * database is considered saturated, growth is reverted and pool does not grow for a few intervals</li>
+ * </ul>
+ *
+ * @author skopylov@gmail.com
+ *
+ */
+final class PoolAutotuner {
+
+    private static final Logger logger = System.getLogger(PoolAutotuner.class.getName());
+
+    /** Min number of returned connections per interval to make a decision. */
+    static final int MIN_SAMPLES = 50;
+    /** Number of intervals pool does not grow after back-off. */
+    static final int BACKOFF_INTERVALS = 5;
+
+    private final SimpleJDBCConnectionPool pool;
+    private final PoolMetrics metrics;
+    private final SimpleJDBCConnectionPool.Config config;
+
+    private long lastTime;
+    private long lastArrivals;
+    private long lastHoldCount;
+    private long lastHoldSum;
+    private long lastWaitCount;
+    private long lastWaitSum;
+
+    private int grownFrom = -1; //size before the last growth, -1 if the last decision was not growth
+    private double holdBeforeGrowth;
+    private int backoff;
+
+    /**
+     * Constructor.
+     * @param pool pool to resize
+     * @param metrics pool metrics
+     * @param config pool configuration
+     */
+    PoolAutotuner(SimpleJDBCConnectionPool pool, PoolMetrics metrics, SimpleJDBCConnectionPool.Config config) {
+        this.pool = pool;
+        this.metrics = metrics;
+        this.config = config;
+        lastTime = System.nanoTime();
+        lastArrivals = arrivals();
+        lastHoldCount = metrics.holdTime.getCount();
+        lastHoldSum = metrics.holdTime.getSum();
+        lastWaitCount = metrics.waitTime.getCount();
+        lastWaitSum = metrics.waitTime.getSum();
+    }
+
+    private long arrivals() {
+        return metrics.checkouts.sum() + metrics.checkoutTimeouts.sum()
+                + metrics.rejectedCheckouts.sum() + metrics.shedCheckouts.sum();
+    }
+
+    /**
+     * Samples metrics and resizes the pool if needed, called periodically by the housekeeper.
+     */
+    void tune() {
+        long now = System.nanoTime();
+        long arrivals = arrivals();
+        long holdCount = metrics.holdTime.getCount();
+        long holdSum = metrics.holdTime.getSum();
+        long waitCount = metrics.waitTime.getCount();
+        long waitSum = metrics.waitTime.getSum();
+        int current = config.poolSize;
+        int target = decide(current, arrivals - lastArrivals, holdCount - lastHoldCount, holdSum - lastHoldSum,
+                waitCount - lastWaitCount, waitSum - lastWaitSum, now - lastTime);
+        lastTime = now;
+        lastArrivals = arrivals;
+        lastHoldCount = holdCount;
+        lastHoldSum = holdSum;
+        lastWaitCount = waitCount;
+        lastWaitSum = waitSum;
+        if (target != current) {
+            pool.resize(target);
+        }
+    }
+
+    /**
+     * Decides pool size for the next interval.
+     * @param current current pool size
+     * @param arrivals number of clients asked for connection during the interval
+     * @param holdCount number of connections returned during the interval
+     * @param holdSum total hold time of the returned connections, nanoseconds
+     * @param waitCount number of checkouts during the interval
+     * @param waitSum total wait time of the checkouts, nanoseconds
+     * @param elapsed interval length, nanoseconds
+     * @return new pool size
+     */
+    int decide(int current, long arrivals, long holdCount, long holdSum, long waitCount, long waitSum, long elapsed) {
+        if (holdCount < MIN_SAMPLES || elapsed <= 0) {
+            return current;
+        }
+        double meanHold = (double) holdSum / holdCount;
+        if (grownFrom >= 0) {
+            int from = grownFrom;
+            grownFrom = -1;
+            if (meanHold > holdBeforeGrowth * (1 + config.autotuneBackoffThreshold)) {
+                backoff = BACKOFF_INTERVALS;
+                logger.log(Level.DEBUG, () -> config.poolName + " hold time grew from " + (long) holdBeforeGrowth
+                        + " to " + (long) meanHold + " ns after growth, backing off to " + from);
+                return from;
+            }
+        }
+        double meanWait = waitCount > 0 ? (double) waitSum / waitCount : 0;
+        double demand = arrivals * (meanWait + meanHold) / elapsed;
+        int target = (int) Math.ceil(demand * (1 + config.autotuneHeadroom));
+        target = Math.max(config.autotuneMinSize, Math.min(config.autotuneMaxSize, target));
+        if (backoff > 0) {
+            backoff--;
+            target = Math.min(target, current);
+        }
+        int diff = target - current;
+        if (Math.abs(diff) < Math.max(1, Math.round(current * config.autotuneHysteresis))) {
+            return current;
+        }
+        int step = Math.max(1, config.autotuneMaxStep);
+        diff = Math.max(-step, Math.min(step, diff));
+        if (diff > 0) {
+            grownFrom = current;
+            holdBeforeGrowth = meanHold;
+        }
+        int size = current + diff;
+        logger.log(Level.DEBUG, () -> config.poolName + " connection demand " + String.format("%.1f", demand)
+                + ", resizing from " + current + " to " + size);
+        return size;
+    }
+}
@@ -0,0 +1,148 @@
+package com.github.skopylov58.jdbc.pool;
+
+import java.time.Duration;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+/**
+ * Implementation of the pool control MBean.
+ *
+ * Setters write volatile configuration fields which are read by the checkout path,
+ * so changes are visible to the clients without any locking.
+ *
+ * @author skopylov@gmail.com
+ *
+ */
+public final class PoolControl implements PoolControlMBean {
+
+    static final String DOMAIN = "com.github.skopylov58.jdbc.pool";
+
+    private final SimpleJDBCConnectionPool pool;
+    private final SimpleJDBCConnectionPool.Config config;
+
+    PoolControl(SimpleJDBCConnectionPool pool, SimpleJDBCConnectionPool.Config config) {
+        this.pool = pool;
+        this.config = config;
+    }
+
+    /**
+     * Makes MBean object name of the pool, pool name is quoted if it contains special characters.
+     * @param poolName pool name
+     * @return object name
+     * @throws MalformedObjectNameException should not happen
+     */
+    static ObjectName objectName(String poolName) throws MalformedObjectNameException {
+        String prefix = DOMAIN + ":type=" + SimpleJDBCConnectionPool.class.getSimpleName() + ",name=";
+        try {
+            return new ObjectName(prefix + poolName);
+        } catch (MalformedObjectNameException e) {
+            return new ObjectName(prefix + ObjectName.quote(poolName));
+        }
+    }
+
+    @Override
+    public int getTotalConnections() {
+        return pool.getTotalConnections();
+    }
+
+    @Override
+    public int getActiveConnections() {
+        return Math.max(0, pool.getTotalConnections() - pool.getIdleConnections());
+    }
+
+    @Override
+    public int getIdleConnections() {
+        return pool.getIdleConnections();
+    }
+
+    @Override
+    public int getWaitingClients() {
+        return pool.getWaitingThreads() + pool.getAsyncWaiters();
+    }
+
+    @Override
+    public long getCheckouts() {
+        return pool.getMetrics().checkouts.sum();
+    }
+
+    @Override
+    public long getCheckoutTimeouts() {
+        return pool.getMetrics().checkoutTimeouts.sum();
+    }
+
+    @Override
+    public String getCircuitBreakerState() {
+        return pool.getCircuitBreakerState().name();
+    }
+
+    @Override
+    public int getPoolSize() {
+        return config.poolSize;
+    }
+
+    @Override
+    public void setPoolSize(int poolSize) {
+        pool.resize(poolSize);
+    }
+
+    @Override
+    public int getMinIdle() {
+        return config.minIdle;
+    }
+
+    @Override
+    public long getClientTimeoutMillis() {
+        return config.clientTimeout.toMillis();
+    }
+
+    @Override
+    public void setClientTimeoutMillis(long millis) {
+        config.clientTimeout = Duration.ofMillis(millis);
+    }
+
+    @Override
+    public boolean isValidateConnectionOnCheckout() {
+        return config.validateConnectionOnCheckout;
+    }
+
+    @Override
+    public void setValidateConnectionOnCheckout(boolean validate) {
+        config.validateConnectionOnCheckout = validate;
+    }
+
+    @Override
+    public long getConnectionValidationTimeoutMillis() {
+        return config.connectionValidationTimeout.toMillis();
+    }
+
+    @Override
+    public void setConnectionValidationTimeoutMillis(long millis) {
+        config.connectionValidationTimeout = Duration.ofMillis(millis);
+    }
+
+    @Override
+    public long getValidationBypassWindowMillis() {
+        return config.validationBypassWindow.toMillis();
+    }
+
+    @Override
+    public void setValidationBypassWindowMillis(long millis) {
+        config.validationBypassWindow = Duration.ofMillis(millis);
+    }
+
+    @Override
+    public int getMaxWaiters() {
+        return config.maxWaiters;
+    }
+
+    @Override
+    public void setMaxWaiters(int maxWaiters) {
+        config.maxWaiters = maxWaiters;
+    }
+
+    @Override
+    public void softEvictConnections() {
+        pool.softEvictConnections();
+    }
+}
@@ -0,0 +1,63 @@
+package com.github.skopylov58.jdbc.pool;
+
+/**
+ * JMX interface to monitor and reconfigure the pool at runtime.
+ *
+ * Registered under {@code com.github.skopylov58.jdbc.pool:type=SimpleJDBCConnectionPool,name=<poolName>}
+ * if {@link SimpleJDBCConnectionPool.Config#registerMBean} is set.
+ * Changes are applied to the running pool, keyed sub-pools keep their own configuration.
+ *
+ * @author skopylov@gmail.com
+ *
+ */
+public interface PoolControlMBean {
+
+    int getTotalConnections();
+
+    int getActiveConnections();
+
+    int getIdleConnections();
+
+    int getWaitingClients();
+
+    long getCheckouts();
+
+    long getCheckoutTimeouts();
+
+    String getCircuitBreakerState();
+
+    int getPoolSize();
+
+    /**
+     * Resizes the pool, see {@link SimpleJDBCConnectionPool#resize(int)}.
+     * @param poolSize new max number of connections
+     */
+    void setPoolSize(int poolSize);
+
+    int getMinIdle();
+
+    long getClientTimeoutMillis();
+
+    void setClientTimeoutMillis(long millis);
+
+    boolean isValidateConnectionOnCheckout();
+
+    void setValidateConnectionOnCheckout(boolean validate);
+
+    long getConnectionValidationTimeoutMillis();
+
+    void setConnectionValidationTimeoutMillis(long millis);
+
+    long getValidationBypassWindowMillis();
+
+    void setValidationBypassWindowMillis(long millis);
+
+    int getMaxWaiters();
+
+    void setMaxWaiters(int maxWaiters);
+
+    /**
+     * Replaces all connections, see {@link SimpleJDBCConnectionPool#softEvictConnections()}.
+     */
+    void softEvictConnections();
+}
@@ -0,0 +1,94 @@
+package com.github.skopylov58.jdbc.pool;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JDK Flight Recorder events of the connection pool.
+ *
+ * Pool checks {@link Event#isEnabled()} before filling and committing events,
+ * so events cost nothing when recording is off.
+ *
+ * @author skopylov@gmail.com
+ *
+ */
+final class PoolEvents {
+
+    private static final String CATEGORY = "JDBC Connection Pool";
+
+    private PoolEvents() {}
+
+    @Name("com.github.skopylov58.jdbc.pool.Acquire")
+    @Label("Connection Acquire")
+    @Description("Client got connection from the pool or timed out")
+    @Category(CATEGORY)
+    static final class AcquireEvent extends Event {
+        @Label("Pool")
+        String poolName;
+
+        @Label("Wait Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long waitTime;
+
+        @Label("Pool Exhausted")
+        @Description("There were no idle connections when client asked for connection")
+        boolean exhausted;
+
+        @Label("Success")
+        boolean success;
+    }
+
+    @Name("com.github.skopylov58.jdbc.pool.Release")
+    @Label("Connection Release")
+    @Description("Client returned connection to the pool")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static final class ReleaseEvent extends Event {
+        @Label("Pool")
+        String poolName;
+
+        @Label("Hold Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long holdTime;
+    }
+
+    @Name("com.github.skopylov58.jdbc.pool.Validate")
+    @Label("Connection Validation")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static final class ValidateEvent extends Event {
+        @Label("Pool")
+        String poolName;
+
+        @Label("Valid")
+        boolean valid;
+    }
+
+    @Name("com.github.skopylov58.jdbc.pool.Connect")
+    @Label("Physical Connect")
+    @Description("Pool opened physical connection to the database")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static final class ConnectEvent extends Event {
+        @Label("Pool")
+        String poolName;
+
+        @Label("Success")
+        boolean success;
+    }
+
+    @Name("com.github.skopylov58.jdbc.pool.Close")
+    @Label("Physical Close")
+    @Description("Pool closed physical connection to the database")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static final class CloseEvent extends Event {
+        @Label("Pool")
+        String poolName;
+    }
+}
@@ -0,0 +1,264 @@
+package com.github.skopylov58.jdbc.pool;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * Connection pool metrics.
+ *
+ * Counters are {@link LongAdder}s and latencies are recorded to lock-free fixed-bucket histograms,
+ * so recording does not allocate and does not contend on the checkout path.
+ * Use {@link #snapshot()} to read all metrics at once, or configure {@link Exporter}
+ * to push snapshots to your metrics system periodically.
+ *
+ * @author skopylov@gmail.com
+ *
+ */
+public class PoolMetrics {
+
+    /**
+     * Metrics exporter, receives metrics snapshots periodically.
+     */
+    @FunctionalInterface
+    public interface Exporter {
+        /**
+         * Exports metrics snapshot.
+         * @param poolName name of the pool
+         * @param snapshot metrics snapshot
+         */
+        void export(String poolName, Snapshot snapshot);
+    }
+
+    /**
+     * Snapshot of the pool metrics.
+     * All durations are in nanoseconds.
+     */
+    public record Snapshot(
+            int totalConnections,
+            int activeConnections,
+            int idleConnections,
+            int waitingClients,
+            long checkouts,
+            long checkoutTimeouts,
+            long rejectedCheckouts,
+            long shedCheckouts,
+            long connectionsCreated,
+            long connectionsClosed,
+            long connectFailures,
+            long validationFailures,
+            long statementCacheHits,
+            long statementCacheMisses,
+            long leakedStatements,
+            HistogramSnapshot waitTime,
+            HistogramSnapshot holdTime,
+            HistogramSnapshot validationTime,
+            HistogramSnapshot connectTime) {
+    }
+
+    /**
+     * Snapshot of the latency histogram, values are in nanoseconds.
+     * Percentiles are upper bounds of the corresponding histogram buckets,
+     * so their relative error does not exceed 1/{@value Histogram#SUB_BUCKETS}.
+     */
+    public record HistogramSnapshot(long count, long mean, long p50, long p90, long p99, long p999, long max) {
+    }
+
+    /**
+     * Lock-free histogram with fixed log-linear buckets.
+     * Each power of two range of values is split to {@value #SUB_BUCKETS} linear sub-buckets.
+     */
+    public static final class Histogram {
+
+        static final int SUB_BUCKET_BITS = 3;
+        static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+        private final LongAdder[] buckets = new LongAdder[BUCKETS];
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        Histogram() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        /**
+         * Records value.
+         * @param value value to record, negative values are recorded as zero
+         */
+        public void record(long value) {
+            if (value < 0) {
+                value = 0;
+            }
+            buckets[bucketIndex(value)].increment();
+            count.increment();
+            sum.add(value);
+            long m = max.get();
+            while (value > m && !max.compareAndSet(m, value)) {
+                m = max.get();
+            }
+        }
+
+        /**
+         * Takes snapshot of the histogram.
+         * @return histogram snapshot
+         */
+        public HistogramSnapshot snapshot() {
+            long[] counts = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = buckets[i].sum();
+                total += counts[i];
+            }
+            long mean = total == 0 ? 0 : sum.sum() / total;
+            long maxValue = max.get();
+            return new HistogramSnapshot(total, mean,
+                    percentile(counts, total, 0.5, maxValue),
+                    percentile(counts, total, 0.9, maxValue),
+                    percentile(counts, total, 0.99, maxValue),
+                    percentile(counts, total, 0.999, maxValue),
+                    maxValue);
+        }
+
+        /**
+         * @return number of recorded values
+         */
+        public long getCount() {
+            return count.sum();
+        }
+
+        /**
+         * @return sum of recorded values
+         */
+        public long getSum() {
+            return sum.sum();
+        }
+
+        private static long percentile(long[] counts, long total, double p, long maxValue) {
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(total * p);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(bucketUpperBound(i), maxValue);
+                }
+            }
+            return maxValue;
+        }
+
+        static int bucketIndex(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            int exp = Long.SIZE - 1 - Long.numberOfLeadingZeros(value); // >= SUB_BUCKET_BITS
+            int sub = (int) (value >>> (exp - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+            return (exp - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+        }
+
+        static long bucketUpperBound(int index) {
+            if (index < SUB_BUCKETS) {
+                return index;
+            }
+            int exp = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+            long sub = index % SUB_BUCKETS;
+            long lower = (1L << exp) + (sub << (exp - SUB_BUCKET_BITS));
+            return lower + (1L << (exp - SUB_BUCKET_BITS)) - 1;
+        }
+    }
+
+    final LongAdder checkouts = new LongAdder();
+    final LongAdder checkoutTimeouts = new LongAdder();
+    final LongAdder rejectedCheckouts = new LongAdder();
+    final LongAdder shedCheckouts = new LongAdder();
+    final LongAdder connectionsCreated = new LongAdder();
+    final LongAdder connectionsClosed = new LongAdder();
+    final LongAdder connectFailures = new LongAdder();
+    final LongAdder validationFailures = new LongAdder();
+    final LongAdder statementCacheHits = new LongAdder();
+    final LongAdder statementCacheMisses = new LongAdder();
+    final LongAdder leakedStatements = new LongAdder();
+
+    final Histogram waitTime = new Histogram();
+    final Histogram holdTime = new Histogram();
+    final Histogram validationTime = new Histogram();
+    final Histogram connectTime = new Histogram();
+
+    private final IntSupplier total;
+    private final IntSupplier idle;
+    private final IntSupplier waiting;
+
+    /**
+     * Constructor.
+     * @param total supplies total number of connections
+     * @param idle supplies number of idle connections
+     * @param waiting supplies number of clients waiting for connection
+     */
+    PoolMetrics(IntSupplier total, IntSupplier idle, IntSupplier waiting) {
+        this.total = total;
+        this.idle = idle;
+        this.waiting = waiting;
+    }
+
+    /**
+     * Takes snapshot of the pool metrics.
+     * @return metrics snapshot
+     */
+    public Snapshot snapshot() {
+        int totalConnections = total.getAsInt();
+        int idleConnections = idle.getAsInt();
+        return new Snapshot(
+                totalConnections,
+                Math.max(0, totalConnections - idleConnections),
+                idleConnections,
+                waiting.getAsInt(),
+                checkouts.sum(),
+                checkoutTimeouts.sum(),
+                rejectedCheckouts.sum(),
+                shedCheckouts.sum(),
+                connectionsCreated.sum(),
+                connectionsClosed.sum(),
+                connectFailures.sum(),
+                validationFailures.sum(),
+                statementCacheHits.sum(),
+                statementCacheMisses.sum(),
+                leakedStatements.sum(),
+                waitTime.snapshot(),
+                holdTime.snapshot(),
+                validationTime.snapshot(),
+                connectTime.snapshot());
+    }
+
+    /**
+     * @return checkout wait time histogram
+     */
+    public Histogram getWaitTime() {
+        return waitTime;
+    }
+
+    /**
+     * @return connection hold time histogram
+     */
+    public Histogram getHoldTime() {
+        return holdTime;
+    }
+
+    /**
+     * @return connection validation time histogram
+     */
+    public Histogram getValidationTime() {
+        return validationTime;
+    }
+
+    /**
+     * @return physical connect time histogram
+     */
+    public Histogram getConnectTime() {
+        return connectTime;
+    }
+}
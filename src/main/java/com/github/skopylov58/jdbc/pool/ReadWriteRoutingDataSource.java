@@ -0,0 +1,270 @@
+package com.github.skopylov58.jdbc.pool;
+
+import java.io.PrintWriter;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+import javax.sql.DataSource;
+
+/**
+ * Data source which splits read and write traffic between primary database and its replicas.
+ *
+ * Writes and {@link #getConnection()} go to the primary pool, {@link #getConnection(boolean)} with
+ * read-only flag goes to one of the replica pools. Replica is chosen by power of two choices -
+ * two random healthy replicas are compared, and the one with fewer active and waiting clients wins.
+ * Replica which failed to give connection because it could not connect to the database or its circuit breaker
+ * is open is ejected for {@link Config#replicaEjectionTime}. Replica which is only busy is not ejected,
+ * its checkout timeout or rejection is passed to the caller, so its load does not cascade to other replicas.
+ * Replica with open circuit breaker or stopped pool is skipped. If there are no healthy replicas,
+ * read is served by the primary.
+ *
+ * @author skopylov@gmail.com
+ *
+ */
+public class ReadWriteRoutingDataSource implements DataSource {
+
+    private static final Logger logger = System.getLogger(ReadWriteRoutingDataSource.class.getName());
+
+    private final SimpleJDBCConnectionPool primary;
+    private final Replica[] replicas;
+    private final Config config = new Config();
+
+    /**
+     * Replica pool with its health state.
+     */
+    private static final class Replica {
+        final SimpleJDBCConnectionPool pool;
+        volatile boolean ejected;
+        volatile long ejectedAt;
+
+        Replica(SimpleJDBCConnectionPool pool) {
+            this.pool = Objects.requireNonNull(pool);
+        }
+
+        boolean isHealthy(long now, long ejectionTime) {
+            if (ejected) {
+                if (now - ejectedAt < ejectionTime) {
+                    return false;
+                }
+                ejected = false;
+            }
+            return pool.getCircuitBreakerState() == CircuitBreaker.State.CLOSED && !pool.isStopped();
+        }
+
+        /**
+         * @return true if replica failed to give connection because of database failure, not because it is busy
+         */
+        boolean isFailing() {
+            return pool.isConnectFailing() || pool.getCircuitBreakerState() != CircuitBreaker.State.CLOSED
+                    || pool.isStopped();
+        }
+
+        int getLoad() {
+            return pool.getTotalConnections() - pool.getIdleConnections()
+                    + pool.getWaitingThreads() + pool.getAsyncWaiters();
+        }
+    }
+
+    /**
+     * Constructor.
+     * @param primary pool of the primary database
+     * @param replicas pools of the replicas
+     */
+    public ReadWriteRoutingDataSource(SimpleJDBCConnectionPool primary, List<SimpleJDBCConnectionPool> replicas) {
+        this.primary = Objects.requireNonNull(primary);
+        this.replicas = replicas.stream().map(Replica::new).toArray(Replica[]::new);
+    }
+
+    /**
+     * Configures the data source.
+     * @param cnf configuration
+     */
+    public void configure(Consumer<Config> cnf) {
+        cnf.accept(config);
+    }
+
+    /**
+     * Starts primary and replica pools.
+     */
+    public void start() {
+        primary.start();
+        for (Replica r : replicas) {
+            r.pool.start();
+        }
+    }
+
+    /**
+     * Stops primary and replica pools.
+     */
+    public void stop() {
+        for (Replica r : replicas) {
+            r.pool.stop();
+        }
+        primary.stop();
+    }
+
+    /**
+     * Gets connection to the primary database.
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        return primary.getConnection();
+    }
+
+    /**
+     * Gets connection for the read-only or read-write work.
+     * @param readOnly true if caller is going to read only
+     * @return replica connection for read-only work if there are healthy replicas, otherwise primary connection
+     * @throws SQLException if connection could not be acquired, including timeout or rejection by the busy replica
+     */
+    public Connection getConnection(boolean readOnly) throws SQLException {
+        if (!readOnly) {
+            return primary.getConnection();
+        }
+        for (int i = 0; i < replicas.length; i++) {
+            Replica replica = chooseReplica();
+            if (replica == null) {
+                break;
+            }
+            try {
+                return replica.pool.getConnection();
+            } catch (SQLException e) {
+                if (!replica.isFailing()) {
+                    throw e;
+                }
+                eject(replica, e);
+            }
+        }
+        if (!config.fallbackToPrimary) {
+            throw new SQLTransientConnectionException("There are no healthy replicas");
+        }
+        return primary.getConnection();
+    }
+
+    /**
+     * Chooses less loaded of two random healthy replicas.
+     * @return replica or null if there are no healthy replicas
+     */
+    private Replica chooseReplica() {
+        int n = replicas.length;
+        if (n == 0) {
+            return null;
+        }
+        long now = System.nanoTime();
+        long ejectionTime = config.replicaEjectionTime.toNanos();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int i = random.nextInt(n);
+        Replica a = replicas[i];
+        boolean healthyA = a.isHealthy(now, ejectionTime);
+        if (n == 1) {
+            return healthyA ? a : null;
+        }
+        int j = random.nextInt(n - 1);
+        Replica b = replicas[j >= i ? j + 1 : j];
+        boolean healthyB = b.isHealthy(now, ejectionTime);
+        if (healthyA && healthyB) {
+            return a.getLoad() <= b.getLoad() ? a : b;
+        }
+        if (healthyA) {
+            return a;
+        }
+        if (healthyB) {
+            return b;
+        }
+        Replica best = null;
+        int bestLoad = Integer.MAX_VALUE;
+        for (Replica r : replicas) {
+            if (r.isHealthy(now, ejectionTime)) {
+                int load = r.getLoad();
+                if (load < bestLoad) {
+                    best = r;
+                    bestLoad = load;
+                }
+            }
+        }
+        return best;
+    }
+
+    private void eject(Replica replica, SQLException e) {
+        replica.ejectedAt = System.nanoTime();
+        replica.ejected = true;
+        logger.log(Level.WARNING, "Replica is ejected for " + config.replicaEjectionTime, e);
+    }
+
+    /**
+     * @return number of replicas which are not ejected and have closed circuit breaker
+     */
+    public int getHealthyReplicas() {
+        long now = System.nanoTime();
+        long ejectionTime = config.replicaEjectionTime.toNanos();
+        int healthy = 0;
+        for (Replica r : replicas) {
+            if (r.isHealthy(now, ejectionTime)) {
+                healthy++;
+            }
+        }
+        return healthy;
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return primary.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        primary.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        primary.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return primary.getLoginTimeout();
+    }
+
+    @Override
+    public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("Not a wrapper for " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this);
+    }
+
+    /**
+     * Routing configuration.
+     */
+    public static class Config {
+        /** How long replica which failed to give connection is excluded from routing. */
+        public Duration replicaEjectionTime = Duration.ofSeconds(30);
+        /** Serve reads from the primary if there are no healthy replicas. */
+        public boolean fallbackToPrimary = true;
+    }
+}
@@ -0,0 +1,268 @@
+package com.github.skopylov58.jdbc.pool;
+
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+import javax.sql.DataSource;
+
+/**
+ * Data source which routes connections to the database shards by the shard key.
+ *
+ * Each shard has its own pool. Shards are placed on the consistent hash ring, each shard
+ * by {@link Config#virtualNodes} points, and the key goes to the first shard point clockwise from the key's hash,
+ * so routing takes O(log n) and adding or removing shard remaps only keys of the ring segments it takes or gives up.
+ * Hashes are stable 64-bit hashes of the key's string form, so routing does not change between JVM runs.
+ * <p>
+ * Ring is immutable and replaced as a whole on shard addition or removal, so routing does not take locks.
+ * Health and metrics are reported per shard, so hot shards are visible.
+ *
+ * @author skopylov@gmail.com
+ *
+ */
+public class ShardedDataSource implements DataSource {
+
+    private final Config config = new Config();
+    private final Map<String, SimpleJDBCConnectionPool> shards = new LinkedHashMap<>(); //guarded by this
+    private volatile Ring ring = new Ring(Collections.emptyNavigableMap(), Map.of());
+    private boolean started; //guarded by this
+
+    /**
+     * Immutable hash ring and pools of its shards.
+     */
+    private record Ring(NavigableMap<Long, String> points, Map<String, SimpleJDBCConnectionPool> pools) {
+    }
+
+    /**
+     * Configures the data source, should be called before shards are added.
+     * @param cnf configuration
+     */
+    public void configure(Consumer<Config> cnf) {
+        cnf.accept(config);
+    }
+
+    /**
+     * Adds shard with the new pool, pool is configured by {@link Config#shardPoolConfig}.
+     * @param name shard name, stable name keeps routing stable
+     * @param url shard database URL
+     */
+    public void addShard(String name, String url) {
+        SimpleJDBCConnectionPool pool = new SimpleJDBCConnectionPool(url);
+        pool.configure(c -> {
+            config.shardPoolConfig.accept(c);
+            c.poolName = name;
+        });
+        addShard(name, pool);
+    }
+
+    /**
+     * Adds shard, pool is started if data source is started.
+     * @param name shard name, stable name keeps routing stable
+     * @param pool shard pool
+     */
+    public synchronized void addShard(String name, SimpleJDBCConnectionPool pool) {
+        Objects.requireNonNull(pool);
+        if (shards.containsKey(name)) {
+            throw new IllegalArgumentException("Shard already exists: " + name);
+        }
+        if (started) {
+            pool.start();
+        }
+        shards.put(name, pool);
+        publish();
+    }
+
+    /**
+     * Removes shard from the ring and stops its pool.
+     * @param name shard name
+     * @return true if shard was removed
+     */
+    public boolean removeShard(String name) {
+        SimpleJDBCConnectionPool pool;
+        synchronized (this) {
+            pool = shards.remove(name);
+            if (pool == null) {
+                return false;
+            }
+            publish();
+        }
+        pool.stop();
+        return true;
+    }
+
+    /**
+     * Builds new ring from the current shards and publishes it.
+     */
+    private void publish() {
+        TreeMap<Long, String> newRing = new TreeMap<>();
+        for (String name : shards.keySet()) {
+            for (int i = 0; i < config.virtualNodes; i++) {
+                // on collision the smaller name wins, so ring does not depend on the order of addition
+                newRing.merge(hash(name + "#" + i), name, (a, b) -> a.compareTo(b) <= 0 ? a : b);
+            }
+        }
+        ring = new Ring(newRing, Map.copyOf(shards));
+    }
+
+    /**
+     * Starts pools of all shards.
+     */
+    public synchronized void start() {
+        started = true;
+        shards.values().forEach(SimpleJDBCConnectionPool::start);
+    }
+
+    /**
+     * Stops pools of all shards.
+     */
+    public synchronized void stop() {
+        started = false;
+        shards.values().forEach(SimpleJDBCConnectionPool::stop);
+    }
+
+    /**
+     * Finds shard of the key.
+     * @param shardKey shard key
+     * @return shard name
+     * @throws SQLException if there are no shards
+     */
+    public String getShard(Object shardKey) throws SQLException {
+        return getShard(ring, shardKey);
+    }
+
+    private static String getShard(Ring r, Object shardKey) throws SQLException {
+        NavigableMap<Long, String> points = r.points;
+        if (points.isEmpty()) {
+            throw new SQLException("There are no shards");
+        }
+        Map.Entry<Long, String> e = points.ceilingEntry(hash(shardKey));
+        return e != null ? e.getValue() : points.firstEntry().getValue();
+    }
+
+    /**
+     * Gets connection to the shard of the key.
+     * @param shardKey shard key
+     * @return pooled connection
+     * @throws SQLException if connection could not be acquired
+     */
+    public Connection getConnection(Object shardKey) throws SQLException {
+        Ring r = ring;
+        return r.pools.get(getShard(r, shardKey)).getConnection();
+    }
+
+    /**
+     * @return shard pools by shard name
+     */
+    public Map<String, SimpleJDBCConnectionPool> getShards() {
+        return ring.pools;
+    }
+
+    /**
+     * @return circuit breaker state of each shard
+     */
+    public Map<String, CircuitBreaker.State> getShardHealth() {
+        Map<String, CircuitBreaker.State> health = new TreeMap<>();
+        ring.pools.forEach((name, pool) -> health.put(name, pool.getCircuitBreakerState()));
+        return health;
+    }
+
+    /**
+     * @return metrics snapshot of each shard
+     */
+    public Map<String, PoolMetrics.Snapshot> getShardMetrics() {
+        Map<String, PoolMetrics.Snapshot> metrics = new TreeMap<>();
+        ring.pools.forEach((name, pool) -> metrics.put(name, pool.getMetrics().snapshot()));
+        return metrics;
+    }
+
+    /**
+     * Stable 64-bit hash of the key's string form - FNV-1a of UTF-8 bytes followed by the MurmurHash3 finalizer.
+     * Byte array keys are hashed as is.
+     * @param key key
+     * @return hash
+     */
+    static long hash(Object key) {
+        byte[] bytes = key instanceof byte[] raw ? raw : String.valueOf(key).getBytes(StandardCharsets.UTF_8);
+        long h = 0xcbf29ce484222325L;
+        for (byte b : bytes) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Shard key is required, use {@link #getConnection(Object)}.
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        throw new SQLFeatureNotSupportedException("Shard key is required");
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return null;
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        // not used
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        // not used
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return 0;
+    }
+
+    @Override
+    public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("Not a wrapper for " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this);
+    }
+
+    /**
+     * Sharding configuration.
+     */
+    public static class Config {
+        /** Number of ring points per shard, more points give more even key distribution. */
+        public int virtualNodes = 128;
+        /** Configures pools of the shards added by URL. */
+        public Consumer<SimpleJDBCConnectionPool.Config> shardPoolConfig = c -> {};
+    }
+}
@@ -1,616 +1,2262 @@
-package com.github.skopylov58.jdbc.pool;
-
-import java.io.PrintWriter;
-import java.lang.System.Logger;
-import java.lang.System.Logger.Level;
-import java.sql.Array;
-import java.sql.Blob;
-import java.sql.CallableStatement;
-import java.sql.Clob;
-import java.sql.Connection;
-import java.sql.DatabaseMetaData;
-import java.sql.DriverManager;
-import java.sql.NClob;
-import java.sql.PreparedStatement;
-import java.sql.SQLClientInfoException;
-import java.sql.SQLException;
-import java.sql.SQLFeatureNotSupportedException;
-import java.sql.SQLWarning;
-import java.sql.SQLXML;
-import java.sql.Savepoint;
-import java.sql.Statement;
-import java.sql.Struct;
-import java.time.Duration;
-import java.time.Instant;
-import java.util.Arrays;
-import java.util.Map;
-import java.util.Objects;
-import java.util.Optional;
-import java.util.Properties;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.DelayQueue;
-import java.util.concurrent.Delayed;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
-import java.util.function.Consumer;
-import java.util.stream.Collectors;
-
-import javax.sql.DataSource;
-
-import com.github.skopylov58.retry.Retry;
-
-/**
- * Simple JDBC Connection pool.
- * @author skopylov@gmail.com
- *
- */
-public class SimpleJDBCConnectionPool implements DataSource {
-    
-    private static final String ERROR_CLOSING_CONNECTION = "Error closing connection";
-    private static final String NO_AVAILABLE_CONNECTIONS = "There are no available connections in the pool";
-    
-    private static final Logger logger = System.getLogger(SimpleJDBCConnectionPool.class.getName());
-
-    private final String dbUrl;
-    private final Config config = new Config();
-    
-    private BlockingQueue<PooledConnection> pool = new LinkedBlockingQueue<>();
-    private DelayQueue<Orphanable> checkedOut;  //for orphaned connections
-    private ScheduledExecutorService orpansWatchDog;
-
-    /**
-     * Constructor.
-     * @param url URL to the database.
-     */
-    public SimpleJDBCConnectionPool(String url) {
-        dbUrl = url;
-    }
-
-    /**
-     * Starts connection pool.
-     */
-    public void start() {
-        for (int i = 0; i < config.poolSize; i++) {
-            acquireDbConnection(dbUrl);
-        }
-        if (config.detectOrphanConnections) {
-            checkedOut = new DelayQueue<>();
-            orpansWatchDog = Executors.newScheduledThreadPool(1);
-            orpansWatchDog.scheduleWithFixedDelay(this::checkOrphan, 0, 1, TimeUnit.SECONDS);
-        }
-    }
-    
-    /**
-     * Stops connection pool.
-     */
-    public void stop() {
-        pool.forEach(c -> {
-            try {
-                c.getDelegate().close();
-            } catch (SQLException e) {
-                logger.log(Level.TRACE, ERROR_CLOSING_CONNECTION, e);
-            }
-        });
-        pool.clear();
-        if (config.detectOrphanConnections) {
-            orpansWatchDog.shutdown();
-            checkedOut.forEach(o -> {
-                try {
-                    o.connection.getDelegate().close();
-                } catch (SQLException e) {
-                    logger.log(Level.TRACE, ERROR_CLOSING_CONNECTION, e);
-                }
-            });
-        }
-    }
-    
-    @Override
-    public Connection getConnection() throws SQLException {
-        return getConnection(config.clientTimeout);
-    }
-
-    /**
-     * Gets connection from the pool.
-     * @param timeout 
-     * @return pooled connection
-     * @throws SQLException if connection can not be acquired during specified timeout.
-     */
-    public Connection getConnection(Duration timeout) throws SQLException {
-        Instant startTime = Instant.now();
-        Duration remain = timeout;
-        while(!remain.isNegative()) {
-            PooledConnection con = getConnectionFromPool(timeout);
-            if (con != null) {
-                if (config.validateConnectionOnCheckout && !isValid(con, config.connectionValidationTimeout)) {
-                    handleInvalidConnection(con);
-                } else {
-                    if (config.detectOrphanConnections) {
-                        StackTraceElement[] stackTrace = Thread.currentThread().getStackTrace();
-                        checkedOut.add(new Orphanable(con, Instant.now(), config.orphanTimeout, stackTrace));
-                    }
-                    return con;
-                }
-            }
-            Duration elapsed = Duration.between(startTime, Instant.now());
-            remain = remain.minus(elapsed);
-        }
-        throw new SQLException(NO_AVAILABLE_CONNECTIONS);
-    }
-
-    /**
-     * Configures the pool.
-     * @param cnf user supplied configurator 
-     */
-    public void configure(Consumer<Config> cnf) {
-        cnf.accept(config);
-    }
-
-    /**
-     * Checks connection validity.
-     * @param c connection to validate
-     * @param timeout validation timeout
-     * @return true if connection is valid, otherwise - false
-     */
-    public static boolean isValid(PooledConnection c, Duration timeout) {
-        boolean valid = false;
-        try {
-            valid = c.isValid((int)timeout.getSeconds());
-        } catch (SQLException e) {
-            logger.log(Level.TRACE, "Error validating connection", e);
-        }
-        return valid;
-    }    
-
-    /**
-     * Checks if there are any orphan connections and 
-     * prints stack trace to the system logger with WARNING level.
-     */
-    private void checkOrphan() {
-        var stack = Optional.ofNullable(checkedOut.peek())
-        .map(Orphanable::stackTrace)
-        .stream()
-        .flatMap(Arrays::stream)
-        .map(Objects::toString)
-        .collect(Collectors.joining("\n"));
-
-        if (!stack.isEmpty()) {
-            logger.log(Level.WARNING, "Orphaned connection detected with stack:\n" + stack);
-        }
-    }
-    
-    /**
-     * Gets connection from internal pool
-     * @param timeout
-     * @return connection or null if there are no available connections
-     */
-    private PooledConnection getConnectionFromPool(Duration timeout){
-        long millisTimeout = timeout.toMillis();
-        PooledConnection connection = null;
-        try {
-            connection = pool.poll(millisTimeout, TimeUnit.MILLISECONDS);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-        }
-        return connection;
-    }
-
-    /**
-     * Closes invalid connection and acquires a new one from external database. 
-     * @param con connection to close
-     */
-    private void handleInvalidConnection(PooledConnection con) {
-        try {
-            con.getDelegate().close();
-        } catch (SQLException e) {
-            logger.log(Level.TRACE, ERROR_CLOSING_CONNECTION, e);
-        }
-        acquireDbConnection(dbUrl);
-    }
-
-    /**
-     * Acquires connection asynchronously from external database.
-     * @param dbUrl external database URL
-     */
-    private void acquireDbConnection(String dbUrl) {
-        Retry.of(() -> DriverManager.getConnection(dbUrl))
-        .withFixedDelay(config.retryDelay)
-        .retry(config.retryCount)
-        .thenAccept(c -> pool.add(new PooledConnection(c)));
-    }
-
-    @Override
-    public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
-        throw new SQLFeatureNotSupportedException();
-    }
-
-    @Override
-    public <T> T unwrap(Class<T> iface) throws SQLException {
-        throw new SQLException("Is not a wrapper for " + iface.getName());
-    }
-
-    @Override
-    public boolean isWrapperFor(Class<?> iface) throws SQLException {
-        return false;
-    }
-
-    @Override
-    public Connection getConnection(String username, String password) throws SQLException {
-        throw new SQLFeatureNotSupportedException();
-    }
-
-    @Override
-    public PrintWriter getLogWriter() throws SQLException {
-        return DriverManager.getLogWriter();
-    }
-
-    @Override
-    public void setLogWriter(PrintWriter out) throws SQLException {
-        DriverManager.setLogWriter(out);
-    }
-
-    @Override
-    public void setLoginTimeout(int seconds) throws SQLException {
-        DriverManager.setLoginTimeout(seconds);
-    }
-
-    @Override
-    public int getLoginTimeout() throws SQLException {
-        return DriverManager.getLoginTimeout();
-    }
-
-    /**
-     * Pool configuration parameters
-     */
-    public static class Config {
-        public int poolSize = 10;
-        
-        public int retryCount = 10;
-        public Duration retryDelay = Duration.ofSeconds(1);
-        
-        public  Duration clientTimeout = Duration.ofSeconds(10);
-        
-        public boolean validateConnectionOnCheckout = true;
-        public Duration connectionValidationTimeout = Duration.ofSeconds(10);
-
-        public boolean detectOrphanConnections = false;
-        public Duration orphanTimeout = Duration.ofSeconds(30);
-    }
-
-    /**
-     * Potentially orphaned connections. 
-     */
-    record Orphanable(PooledConnection connection, 
-            Instant checkedOut,
-            Duration timeout,
-            StackTraceElement[] stackTrace)
-            implements Delayed {
-        @Override
-        public int compareTo(Delayed other) {
-            return (this == other) ? 0
-                    : Long.compare(getDelay(TimeUnit.MICROSECONDS), other.getDelay(TimeUnit.MICROSECONDS));
-        }
-
-        @Override
-        public long getDelay(TimeUnit unit) {
-            var elapsed = Duration.between(checkedOut, Instant.now());
-            return unit.convert(timeout.minus(elapsed));
-        }
-    }
-    
-    /**
-     * Wrapper class for the physical DB connection.
-     * 
-     * Delegates calls to the physical connection.
-     * Overrides {@link #close()} method to return connection to the pool.
-     * 
-     * @author skopylov@gmail.com
-     *
-     */
-    class PooledConnection implements Connection {
-        
-        private final Connection delegate;
-        
-        /**
-         * Constructor
-         * @param c physical DB connection
-         */
-        PooledConnection(Connection c) {
-            delegate = c;
-        }
-        
-        /**
-         * Gets physical connection
-         * @return physical connection
-         */
-        public Connection getDelegate() {
-            return delegate;
-        }
-
-        @SuppressWarnings("unchecked")
-        public <T> T unwrap(Class<T> iface) throws SQLException {
-            if (isWrapperFor(iface)) {
-                return (T) delegate;
-            }
-            throw new SQLException("Not a wrapper for " + iface.getClass().getName());
-        }
-
-        @Override
-        public boolean isWrapperFor(Class<?> iface) throws SQLException {
-            return iface != null && iface.isAssignableFrom(delegate.getClass());
-        }
-
-        @Override
-        public Statement createStatement() throws SQLException {
-            return delegate.createStatement();
-        }
-
-        @Override
-        public PreparedStatement prepareStatement(String sql) throws SQLException {
-            return delegate.prepareStatement(sql);
-        }
-
-        @Override
-        public CallableStatement prepareCall(String sql) throws SQLException {
-            return delegate.prepareCall(sql);
-        }
-
-        @Override
-        public String nativeSQL(String sql) throws SQLException {
-            return delegate.nativeSQL(sql);
-        }
-
-        @Override
-        public void setAutoCommit(boolean autoCommit) throws SQLException {
-            delegate.setAutoCommit(autoCommit);
-        }
-
-        @Override
-        public boolean getAutoCommit() throws SQLException {
-            return delegate.getAutoCommit();
-        }
-
-        @Override
-        public void commit() throws SQLException {
-            delegate.commit();
-        }
-
-        @Override
-        public void rollback() throws SQLException {
-            delegate.rollback();
-        }
-
-        @Override
-        public void close() throws SQLException {
-            if (config.detectOrphanConnections) {
-                var removed = checkedOut.removeIf(o ->  o.connection == this);
-                if (!removed) {
-                    throw new IllegalStateException();
-                }
-            }
-            pool.add(this);
-        }
-
-        @Override
-        public boolean isClosed() throws SQLException {
-            return delegate.isClosed();
-        }
-
-        @Override
-        public DatabaseMetaData getMetaData() throws SQLException {
-            return delegate.getMetaData();
-        }
-
-        @Override
-        public void setReadOnly(boolean readOnly) throws SQLException {
-            delegate.setReadOnly(readOnly);
-        }
-
-        @Override
-        public boolean isReadOnly() throws SQLException {
-            return delegate.isReadOnly();
-        }
-
-        @Override
-        public void setCatalog(String catalog) throws SQLException {
-            delegate.setCatalog(catalog);
-        }
-
-        @Override
-        public String getCatalog() throws SQLException {
-            return delegate.getCatalog();
-        }
-
-        @Override
-        public void setTransactionIsolation(int level) throws SQLException {
-            delegate.setTransactionIsolation(level);
-        }
-
-        @Override
-        public int getTransactionIsolation() throws SQLException {
-            return delegate.getTransactionIsolation();
-        }
-
-        @Override
-        public SQLWarning getWarnings() throws SQLException {
-            return delegate.getWarnings();
-        }
-
-        @Override
-        public void clearWarnings() throws SQLException {
-            delegate.clearWarnings();
-        }
-
-        @Override
-        public Statement createStatement(int resultSetType, int resultSetConcurrency) throws SQLException {
-            return delegate.createStatement(resultSetType, resultSetConcurrency);
-        }
-
-        @Override
-        public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency)
-                throws SQLException {
-            return delegate.prepareStatement(sql, resultSetType, resultSetConcurrency);
-        }
-
-        @Override
-        public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency)
-                throws SQLException {
-            return delegate.prepareCall(sql, resultSetType, resultSetConcurrency);
-        }
-
-        @Override
-        public Map<String, Class<?>> getTypeMap() throws SQLException {
-            return delegate.getTypeMap();
-        }
-
-        @Override
-        public void setTypeMap(Map<String, Class<?>> map) throws SQLException {
-            delegate.setTypeMap(map);
-        }
-
-        @Override
-        public void setHoldability(int holdability) throws SQLException {
-            delegate.setHoldability(holdability);
-        }
-
-        @Override
-        public int getHoldability() throws SQLException {
-            return delegate.getHoldability();
-        }
-
-        @Override
-        public Savepoint setSavepoint() throws SQLException {
-            return delegate.setSavepoint();
-        }
-
-        @Override
-        public Savepoint setSavepoint(String name) throws SQLException {
-            return delegate.setSavepoint(name);
-        }
-
-        @Override
-        public void rollback(Savepoint savepoint) throws SQLException {
-            delegate.rollback(savepoint);
-        }
-
-        @Override
-        public void releaseSavepoint(Savepoint savepoint) throws SQLException {
-            delegate.releaseSavepoint(savepoint);
-        }
-
-        @Override
-        public Statement createStatement(int resultSetType, int resultSetConcurrency, int resultSetHoldability)
-                throws SQLException {
-            return delegate.createStatement(resultSetType, resultSetConcurrency, resultSetHoldability);
-        }
-
-        @Override
-        public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency,
-                int resultSetHoldability) throws SQLException {
-            return delegate.prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
-        }
-
-        @Override
-        public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency,
-                int resultSetHoldability) throws SQLException {
-            return delegate.prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
-        }
-
-        @Override
-        public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
-            return delegate.prepareStatement(sql, autoGeneratedKeys);
-        }
-
-        @Override
-        public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
-            return delegate.prepareStatement(sql, columnIndexes);
-        }
-
-        @Override
-        public PreparedStatement prepareStatement(String sql, String[] columnNames) throws SQLException {
-            return delegate.prepareStatement(sql, columnNames);
-        }
-
-        @Override
-        public Clob createClob() throws SQLException {
-            return delegate.createClob();
-        }
-
-        @Override
-        public Blob createBlob() throws SQLException {
-            return delegate.createBlob();
-        }
-
-        @Override
-        public NClob createNClob() throws SQLException {
-            return delegate.createNClob();
-        }
-
-        @Override
-        public SQLXML createSQLXML() throws SQLException {
-            return delegate.createSQLXML();
-        }
-
-        @Override
-        public boolean isValid(int timeout) throws SQLException {
-            return delegate.isValid(timeout);
-        }
-
-        @Override
-        public void setClientInfo(String name, String value) throws SQLClientInfoException {
-            delegate.setClientInfo(name, value);
-        }
-
-        @Override
-        public void setClientInfo(Properties properties) throws SQLClientInfoException {
-            delegate.setClientInfo(properties);
-        }
-
-        @Override
-        public String getClientInfo(String name) throws SQLException {
-            return delegate.getClientInfo(name);
-        }
-
-        @Override
-        public Properties getClientInfo() throws SQLException {
-            return delegate.getClientInfo();
-        }
-
-        @Override
-        public Array createArrayOf(String typeName, Object[] elements) throws SQLException {
-            return delegate.createArrayOf(typeName, elements);
-        }
-
-        @Override
-        public Struct createStruct(String typeName, Object[] attributes) throws SQLException {
-            return delegate.createStruct(typeName, attributes);
-        }
-
-        @Override
-        public void setSchema(String schema) throws SQLException {
-            delegate.setSchema(schema);
-        }
-
-        @Override
-        public String getSchema() throws SQLException {
-            return delegate.getSchema();
-        }
-
-        @Override
-        public void abort(Executor executor) throws SQLException {
-            delegate.abort(executor);
-        }
-
-        @Override
-        public void setNetworkTimeout(Executor executor, int milliseconds) throws SQLException {
-            delegate.setNetworkTimeout(executor, milliseconds);
-        }
-
-        @Override
-        public int getNetworkTimeout() throws SQLException {
-            return delegate.getNetworkTimeout();
-        }
-    }
-}
+package com.github.skopylov58.jdbc.pool;
+
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.CallableStatement;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.DriverManager;
+import java.sql.NClob;
+import java.sql.PreparedStatement;
+import java.sql.SQLClientInfoException;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.sql.Struct;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.sql.DataSource;
+
+import com.github.skopylov58.retry.Retry;
+
+/**
+ * Simple JDBC Connection pool.
+ * @author skopylov@gmail.com
+ *
+ */
+public class SimpleJDBCConnectionPool implements DataSource {
+    
+    private static final String ERROR_CLOSING_CONNECTION = "Error closing connection";
+    private static final String NO_AVAILABLE_CONNECTIONS = "There are no available connections in the pool";
+    private static final String DATABASE_UNAVAILABLE = "Database is unavailable, circuit breaker is open";
+    private static final String POOL_IS_STOPPED = "Pool is stopped";
+    private static final String TOO_MANY_WAITERS = "Too many clients are waiting for connection";
+    private static final String WAIT_TIME_EXCEEDS_TIMEOUT = "Estimated wait time exceeds client timeout";
+    private static final int MIN_SHEDDING_SAMPLES = 100;
+    
+    private static final Logger logger = System.getLogger(SimpleJDBCConnectionPool.class.getName());
+
+    private final ConnectionFactory connectionFactory;
+    private final Config config;
+    private final SimpleJDBCConnectionPool parent; //null for the root pool
+    private final ConcurrentMap<Credentials, SimpleJDBCConnectionPool> keyedPools = new ConcurrentHashMap<>();
+    private final AtomicInteger globalConnections = new AtomicInteger(); //connections of the root and all keyed pools
+    
+    private final ConcurrentBag<PooledConnection> pool = new ConcurrentBag<>(w -> growPool());
+    private final AtomicInteger totalConnections = new AtomicInteger(); //opened and being opened
+    private final AtomicInteger pendingConnections = new AtomicInteger(); //being opened to serve waiters
+    private final AtomicInteger rotatingConnections = new AtomicInteger(); //replacements of expired connections being opened
+    private final Queue<AsyncWaiter> asyncWaiters = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger asyncWaiting = new AtomicInteger();
+    private final AtomicInteger syncWaiting = new AtomicInteger();
+    private volatile ScheduledExecutorService housekeeper;
+    private volatile ExecutorService worker;
+    private boolean housekeeping; //guarded by this
+    private volatile long lastKeyedUse = System.nanoTime(); //last lookup of the keyed sub-pool
+    private volatile int readyThreshold = -1;
+    private final CompletableFuture<Void> ready = new CompletableFuture<>();
+    private final CircuitBreaker breaker = new CircuitBreaker();
+    private volatile boolean connectFailing;
+
+    private final PoolMetrics metrics;
+    private volatile SqlProfiler profiler;
+    private volatile ObjectName mbeanName;
+
+    /**
+     * Constructor.
+     * @param url URL to the database.
+     */
+    public SimpleJDBCConnectionPool(String url) {
+        this(ConnectionFactory.of(url));
+    }
+
+    /**
+     * Constructor.
+     * @param url URL to the database.
+     * @param info connection properties like user and password
+     */
+    public SimpleJDBCConnectionPool(String url, Properties info) {
+        this(ConnectionFactory.of(url, info));
+    }
+
+    /**
+     * Constructor.
+     * @param connectionFactory creates physical connections
+     */
+    public SimpleJDBCConnectionPool(ConnectionFactory connectionFactory) {
+        this(null, connectionFactory, new Config());
+    }
+
+    /**
+     * Constructor.
+     * @param parent root pool if this is keyed sub-pool, otherwise null
+     * @param connectionFactory creates physical connections
+     * @param config pool configuration
+     */
+    private SimpleJDBCConnectionPool(SimpleJDBCConnectionPool parent, ConnectionFactory connectionFactory, Config config) {
+        this.parent = parent;
+        this.connectionFactory = Objects.requireNonNull(connectionFactory);
+        this.config = config;
+        // keyed sub-pools share metrics of the root pool
+        metrics = parent != null ? parent.metrics : new PoolMetrics(
+                () -> sumOverPools(p -> p.pool.size()),
+                () -> sumOverPools(p -> p.pool.getCount(ConcurrentBag.STATE_NOT_IN_USE)),
+                () -> sumOverPools(p -> p.pool.getWaitingThreadCount() + p.asyncWaiting.get()));
+    }
+
+    private int sumOverPools(ToIntFunction<SimpleJDBCConnectionPool> f) {
+        int sum = f.applyAsInt(this);
+        for (SimpleJDBCConnectionPool p : keyedPools.values()) {
+            sum += f.applyAsInt(p);
+        }
+        return sum;
+    }
+
+    /**
+     * Starts connection pool.
+     * 
+     * Connections are opened in the background, at most {@link Config#startupParallelism} at once.
+     * Use {@link #start(Duration, int)} to wait until pool is ready.
+     */
+    public void start() {
+        if (parent != null) {
+            profiler = parent.profiler;
+        } else if (config.sqlProfiling && profiler == null) {
+            profiler = new SqlProfiler(config.sqlProfilerSize);
+        }
+        if (parent == null && config.registerMBean) {
+            registerMBean();
+        }
+        int minSize = getMinPoolSize();
+        if (readyThreshold < 0) {
+            readyThreshold = minSize;
+        }
+        if (readyThreshold == 0) {
+            ready.complete(null);
+        }
+        openConnections(minSize);
+        PoolMetrics.Exporter exporter = config.metricsExporter;
+        if (exporter != null) {
+            long period = config.metricsExportInterval.toNanos();
+            getHousekeeper().scheduleAtFixedRate(() -> exportMetrics(exporter), period, period, TimeUnit.NANOSECONDS);
+        }
+        if (parent == null && config.autotune) {
+            PoolAutotuner autotuner = new PoolAutotuner(this, metrics, config);
+            long interval = config.autotuneInterval.toNanos();
+            getHousekeeper().scheduleWithFixedDelay(autotuner::tune, interval, interval, TimeUnit.NANOSECONDS);
+        }
+        // keyed sub-pools are maintained by the housekeeping pass of the root pool
+        if (parent == null && (config.detectOrphanConnections || getMinPoolSize() < config.poolSize
+                || !config.keepaliveInterval.isZero() || !config.maxLifetime.isZero())) {
+            startHousekeeping();
+        }
+    }
+
+    /**
+     * Schedules periodic pool maintenance of the root pool, if it is not scheduled yet.
+     */
+    private void startHousekeeping() {
+        synchronized (this) {
+            if (housekeeping) {
+                return;
+            }
+            housekeeping = true;
+        }
+        getHousekeeper().scheduleWithFixedDelay(this::housekeep, 0, 1, TimeUnit.SECONDS);
+    }
+    
+    /**
+     * Starts connection pool and waits until it is ready.
+     * 
+     * @param awaitReady max time to wait
+     * @param minReady min number of opened connections required to consider pool as ready,
+     * at most min pool size as only that many connections are opened at start
+     * @return true if pool is ready, false if timeout elapsed
+     */
+    public boolean start(Duration awaitReady, int minReady) {
+        readyThreshold = Math.max(0, Math.min(minReady, getMinPoolSize()));
+        start();
+        try {
+            ready.get(awaitReady.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            logger.log(Level.TRACE, "Pool is not ready", e);
+        }
+        return isReady();
+    }
+
+    /**
+     * Checks if pool has opened enough connections to serve clients, could be used by readiness probes.
+     * Number of required connections is specified by {@link #start(Duration, int)},
+     * otherwise it is the min pool size.
+     * @return true if pool is ready
+     */
+    public boolean isReady() {
+        return ready.isDone();
+    }
+
+    /**
+     * Opens connections in the background, at most {@link Config#startupParallelism} at once.
+     * @param count number of connections to open
+     */
+    private void openConnections(int count) {
+        int parallelism = config.startupParallelism > 0 ? config.startupParallelism : count;
+        AtomicInteger remaining = new AtomicInteger(count);
+        for (int i = 0; i < Math.min(parallelism, count); i++) {
+            openInitialConnection(remaining);
+        }
+    }
+
+    /**
+     * Opens next of the initial connections, chain of such calls limits number of simultaneously opening connections.
+     * @param remaining number of connections to open
+     */
+    private void openInitialConnection(AtomicInteger remaining) {
+        if (remaining.getAndDecrement() > 0 && reserveSlot()) {
+            acquireDbConnection().whenComplete((v, e) -> openInitialConnection(remaining));
+        }
+    }
+
+    /**
+     * Registers pool control MBean, failure to register does not prevent pool from working.
+     */
+    private void registerMBean() {
+        try {
+            ObjectName name = PoolControl.objectName(config.poolName);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new PoolControl(this, config), name);
+            mbeanName = name;
+        } catch (JMException e) {
+            logger.log(Level.WARNING, "Could not register MBean of " + config.poolName, e);
+        }
+    }
+
+    private void unregisterMBean() {
+        ObjectName name = mbeanName;
+        if (name == null) {
+            return;
+        }
+        mbeanName = null;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (JMException e) {
+            logger.log(Level.DEBUG, "Could not unregister MBean " + name, e);
+        }
+    }
+
+    /**
+     * Stops connection pool.
+     */
+    public void stop() {
+        unregisterMBean();
+        keyedPools.values().forEach(SimpleJDBCConnectionPool::stop);
+        keyedPools.clear();
+        synchronized (this) {
+            if (housekeeper != null && parent == null) {
+                housekeeper.shutdown();
+            }
+            if (worker != null && parent == null) {
+                worker.shutdown();
+            }
+        }
+        pool.close();
+        pool.wakeWaiters();
+        AsyncWaiter waiter;
+        while ((waiter = pollAsyncWaiter()) != null) {
+            waiter.completeExceptionally(new SQLException(POOL_IS_STOPPED));
+        }
+        for (PooledConnection c : pool.values(ConcurrentBag.STATE_NOT_IN_USE)) {
+            if (pool.reserve(c)) {
+                closeConnection(c);
+            }
+        }
+        if (config.detectOrphanConnections) {
+            for (PooledConnection c : pool.values(ConcurrentBag.STATE_IN_USE)) {
+                if (pool.remove(c)) {
+                    closeConnection(c);
+                }
+            }
+        }
+        pool.clear();
+        root().globalConnections.addAndGet(-totalConnections.getAndSet(0));
+    }
+    
+    @Override
+    public Connection getConnection() throws SQLException {
+        return getConnection(config.clientTimeout);
+    }
+
+    /**
+     * Gets connection from the pool.
+     * If {@link Config#lazyConnectionBinding} is set, returns logical connection immediately,
+     * and timeout applies to each binding of the physical connection.
+     * @param timeout 
+     * @return pooled connection
+     * @throws SQLException if connection can not be acquired during specified timeout.
+     * @throws SQLTransientConnectionException immediately if circuit breaker is open
+     * or client is rejected by admission control, see {@link Config#maxWaiters} and {@link Config#loadShedding}
+     */
+    public Connection getConnection(Duration timeout) throws SQLException {
+        if (breaker.isOpen()) {
+            throw new SQLTransientConnectionException(DATABASE_UNAVAILABLE);
+        }
+        if (config.lazyConnectionBinding) {
+            return new LazyConnection(() -> checkout(timeout));
+        }
+        return checkout(timeout);
+    }
+
+    /**
+     * Takes connection from the pool, waits for it if there are no available connections.
+     * @param timeout max time to wait for the connection
+     * @return pooled connection
+     * @throws SQLException if connection can not be acquired during specified timeout
+     */
+    private PooledConnection checkout(Duration timeout) throws SQLException {
+        if (breaker.isOpen()) {
+            throw new SQLTransientConnectionException(DATABASE_UNAVAILABLE);
+        }
+        if (pool.isClosed()) {
+            throw new SQLException(POOL_IS_STOPPED);
+        }
+        long startNanos = System.nanoTime();
+        PoolEvents.AcquireEvent event = new PoolEvents.AcquireEvent();
+        event.begin();
+        PooledConnection con = pollConnection();
+        boolean exhausted = con == null;
+        if (exhausted) {
+            long timeoutNanos = timeout.toNanos();
+            try {
+                SQLException rejection = checkAdmission(syncWaiting.incrementAndGet() + asyncWaiting.get(), timeoutNanos);
+                if (rejection != null) {
+                    commitAcquireEvent(event, System.nanoTime() - startNanos, true, false);
+                    throw rejection;
+                }
+                con = waitForConnection(startNanos + timeoutNanos);
+            } finally {
+                syncWaiting.decrementAndGet();
+            }
+        }
+        long waitNanos = System.nanoTime() - startNanos;
+        if (con == null) {
+            metrics.checkoutTimeouts.increment();
+            commitAcquireEvent(event, waitNanos, exhausted, false);
+            throw new SQLException(NO_AVAILABLE_CONNECTIONS);
+        }
+        metrics.waitTime.record(waitNanos);
+        commitAcquireEvent(event, waitNanos, exhausted, true);
+        return con;
+    }
+
+    /**
+     * Waits for the available connection until deadline.
+     * @param deadline {@link System#nanoTime()} when client stops waiting
+     * @return connection or null if deadline passed or thread was interrupted
+     * @throws SQLTransientConnectionException if circuit breaker opened while waiting
+     * @throws SQLException if pool was stopped while waiting
+     */
+    private PooledConnection waitForConnection(long deadline) throws SQLException {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            if (breaker.isOpen()) {
+                throw new SQLTransientConnectionException(DATABASE_UNAVAILABLE);
+            }
+            if (pool.isClosed()) {
+                throw new SQLException(POOL_IS_STOPPED);
+            }
+            PooledConnection con = getConnectionFromPool(remaining);
+            if (con != null && prepareCheckout(con)) {
+                return con;
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Decides if client could wait for connection.
+     * @param waiting number of waiting clients including this one
+     * @param timeoutNanos how long client is going to wait
+     * @return null if client is admitted, otherwise exception to reject client with
+     */
+    private SQLException checkAdmission(int waiting, long timeoutNanos) {
+        int maxWaiters = config.maxWaiters;
+        if (maxWaiters > 0 && waiting > maxWaiters) {
+            metrics.rejectedCheckouts.increment();
+            return new SQLTransientConnectionException(TOO_MANY_WAITERS);
+        }
+        if (config.loadShedding && estimateWaitTime(waiting) > timeoutNanos) {
+            metrics.shedCheckouts.increment();
+            return new SQLTransientConnectionException(WAIT_TIME_EXCEEDS_TIMEOUT);
+        }
+        return null;
+    }
+
+    /**
+     * Estimates wait time of the client.
+     * 
+     * Connections are released at rate of pool size per mean hold time,
+     * and client has to wait until all clients ahead of it are served.
+     * @param waiting number of waiting clients including this one
+     * @return estimated wait time in nanoseconds, 0 if there are not enough hold time samples
+     */
+    private long estimateWaitTime(int waiting) {
+        long count = metrics.holdTime.getCount();
+        if (count < MIN_SHEDDING_SAMPLES) {
+            return 0;
+        }
+        long meanHoldTime = metrics.holdTime.getSum() / count;
+        return meanHoldTime * waiting / Math.max(1, config.poolSize);
+    }
+
+    /**
+     * Gets connection from the pool without blocking the caller.
+     * 
+     * If there are no available connections, request is queued in FIFO order
+     * and completed by the client returning connection to the pool, so waiting does not occupy any thread.
+     * Returned future completes exceptionally with {@link SQLException} if connection could not be acquired
+     * during specified timeout. Cancelling the future removes request from the queue.
+     * If circuit breaker is open or client is rejected by admission control,
+     * future completes with {@link SQLTransientConnectionException} immediately.
+     * 
+     * If connection should be validated on checkout, see {@link Config#validateConnectionOnCheckout},
+     * it is validated by the pool's worker thread, so the caller is never blocked by the driver.
+     * Connection handed over directly from the client which has just returned it is not validated.
+     * 
+     * @param timeout max time to wait for the connection
+     * @return future of the pooled connection
+     */
+    public CompletableFuture<Connection> getConnectionAsync(Duration timeout) {
+        if (breaker.isOpen()) {
+            return CompletableFuture.failedFuture(new SQLTransientConnectionException(DATABASE_UNAVAILABLE));
+        }
+        AsyncWaiter waiter = new AsyncWaiter(System.nanoTime());
+        PooledConnection con = getConnectionFromPool(0);
+        if (con != null && !needsValidation(con)) {
+            handoff(waiter, con);
+            return waiter;
+        }
+        ScheduledFuture<?> timer = getHousekeeper().schedule(() -> {
+            if (waiter.completeExceptionally(new SQLException(NO_AVAILABLE_CONNECTIONS))) {
+                metrics.checkoutTimeouts.increment();
+                commitAcquireEvent(new PoolEvents.AcquireEvent(), System.nanoTime() - waiter.startTime, true, false);
+            }
+        }, timeout.toNanos(), TimeUnit.NANOSECONDS);
+        waiter.whenComplete((c, e) -> {
+            timer.cancel(false);
+            if (e != null && asyncWaiters.remove(waiter)) {
+                asyncWaiting.decrementAndGet();
+            }
+        });
+        try {
+            getWorker().execute(() -> {
+                if (con == null || !prepareCheckout(con)) {
+                    enqueue(waiter, timeout);
+                } else if (!handoff(waiter, con)) {
+                    releaseConnection(con); //waiter timed out or was cancelled during validation
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            if (con != null) {
+                releaseConnection(con);
+            }
+            waiter.completeExceptionally(new SQLException(POOL_IS_STOPPED, e));
+        }
+        return waiter;
+    }
+
+    /**
+     * Queues asynchronous waiter if it is admitted and tries to serve waiters.
+     * Called by the worker thread, as serving waiters may validate connections.
+     * @param waiter asynchronous waiter
+     * @param timeout waiter's timeout
+     */
+    private void enqueue(AsyncWaiter waiter, Duration timeout) {
+        if (waiter.isDone()) {
+            return;
+        }
+        SQLException rejection = checkAdmission(syncWaiting.get() + asyncWaiting.get() + 1, timeout.toNanos());
+        if (rejection != null) {
+            commitAcquireEvent(new PoolEvents.AcquireEvent(), System.nanoTime() - waiter.startTime, true, false);
+            waiter.completeExceptionally(rejection);
+            return;
+        }
+        asyncWaiters.add(waiter);
+        asyncWaiting.incrementAndGet();
+        if (waiter.isDone() && asyncWaiters.remove(waiter)) {
+            asyncWaiting.decrementAndGet(); //completed while being queued
+        }
+        growPool();
+        // connection may be returned while we were enqueueing
+        serveAsyncWaiters();
+    }
+
+    /**
+     * Checks if connection should be validated before it is given to the client.
+     * @param con connection taken from the pool
+     * @return true if connection should be validated
+     */
+    private boolean needsValidation(PooledConnection con) {
+        return config.validateConnectionOnCheckout
+                && System.nanoTime() - con.getLastActivityTime() >= config.validationBypassWindow.toNanos();
+    }
+
+    /**
+     * Validates connection taken from the pool and prepares it for the client.
+     * @param con connection taken from the pool
+     * @return true if connection could be given to the client,
+     * false if connection was invalid and has been replaced by a new one
+     */
+    private boolean prepareCheckout(PooledConnection con) {
+        if (needsValidation(con) && !validate(con)) {
+            handleInvalidConnection(con);
+            return false;
+        }
+        con.trackCheckout();
+        return true;
+    }
+
+    /**
+     * Commits JFR acquire event if it is enabled.
+     * @param event acquire event
+     * @param waitNanos how long client waited for the connection
+     * @param exhausted true if there were no idle connections when client asked for connection
+     * @param success true if client got connection
+     */
+    private void commitAcquireEvent(PoolEvents.AcquireEvent event, long waitNanos, boolean exhausted, boolean success) {
+        if (event.isEnabled()) {
+            event.poolName = config.poolName;
+            event.waitTime = waitNanos;
+            event.exhausted = exhausted;
+            event.success = success;
+            event.commit();
+        }
+    }
+
+    /**
+     * Validates connection and records validation metrics.
+     * @param con connection to validate
+     * @return true if connection is valid
+     */
+    private boolean validate(PooledConnection con) {
+        PoolEvents.ValidateEvent event = new PoolEvents.ValidateEvent();
+        event.begin();
+        long start = System.nanoTime();
+        boolean valid = isValid(con, config.connectionValidationTimeout);
+        metrics.validationTime.record(System.nanoTime() - start);
+        if (valid) {
+            recordDatabaseSuccess();
+        } else {
+            metrics.validationFailures.increment();
+            recordDatabaseFailure();
+        }
+        if (event.isEnabled()) {
+            event.poolName = config.poolName;
+            event.valid = valid;
+            event.commit();
+        }
+        return valid;
+    }
+
+    /**
+     * Gets available connection from the pool without waiting.
+     * @return connection or null if there are no available connections
+     */
+    private PooledConnection pollConnection() {
+        PooledConnection con;
+        while ((con = getConnectionFromPool(0)) != null) {
+            if (prepareCheckout(con)) {
+                return con;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gives available connections to the asynchronous waiters.
+     */
+    private void serveAsyncWaiters() {
+        while (asyncWaiting.get() > 0) {
+            PooledConnection con = pollConnection();
+            if (con == null) {
+                return;
+            }
+            if (!handoffToAsyncWaiter(con)) {
+                pool.requite(con);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Hands over checked out connection to the first asynchronous waiter.
+     * @param con checked out connection
+     * @return true if some waiter got the connection
+     */
+    private boolean handoffToAsyncWaiter(PooledConnection con) {
+        AsyncWaiter waiter;
+        while ((waiter = pollAsyncWaiter()) != null) {
+            if (handoff(waiter, con)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Completes asynchronous waiter with checked out connection.
+     * @param waiter asynchronous waiter
+     * @param con checked out connection
+     * @return true if waiter got the connection, false if it was already completed
+     */
+    private boolean handoff(AsyncWaiter waiter, PooledConnection con) {
+        if (!waiter.complete(con)) {
+            return false;
+        }
+        con.trackCheckout();
+        long waitNanos = System.nanoTime() - waiter.startTime;
+        metrics.waitTime.record(waitNanos);
+        commitAcquireEvent(new PoolEvents.AcquireEvent(), waitNanos, waitNanos > 0, true);
+        return true;
+    }
+
+    private AsyncWaiter pollAsyncWaiter() {
+        AsyncWaiter waiter = asyncWaiters.poll();
+        if (waiter != null) {
+            asyncWaiting.decrementAndGet();
+        }
+        return waiter;
+    }
+
+    /**
+     * Returns connection to the pool or hands it over to the asynchronous waiter.
+     * Connection returned after the pool is stopped is closed.
+     * @param con connection returned by the client
+     */
+    private void releaseConnection(PooledConnection con) {
+        if (pool.isClosed()) {
+            closeConnection(con);
+            return;
+        }
+        if (asyncWaiting.get() > 0 && handoffToAsyncWaiter(con)) {
+            return;
+        }
+        pool.requite(con);
+        if (pool.isClosed() && pool.reserve(con)) {
+            closeConnection(con); //pool was stopped while connection was being returned
+        }
+    }
+
+    /**
+     * Gets scheduler for pool maintenance and async timeouts, creates it on demand.
+     * @return scheduler
+     */
+    private ScheduledExecutorService getHousekeeper() {
+        if (parent != null) {
+            return parent.getHousekeeper();
+        }
+        ScheduledExecutorService executor = housekeeper;
+        if (executor != null) {
+            return executor;
+        }
+        synchronized (this) {
+            if (housekeeper == null) {
+                housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread t = new Thread(r, "simple-jdbc-pool-housekeeper");
+                    t.setDaemon(true);
+                    return t;
+                });
+            }
+            return housekeeper;
+        }
+    }
+
+    /**
+     * Gets executor for blocking work done on behalf of asynchronous clients, creates it on demand.
+     * @return executor
+     */
+    private ExecutorService getWorker() {
+        if (parent != null) {
+            return parent.getWorker();
+        }
+        ExecutorService executor = worker;
+        if (executor != null) {
+            return executor;
+        }
+        synchronized (this) {
+            if (worker == null) {
+                worker = Executors.newCachedThreadPool(r -> {
+                    Thread t = new Thread(r, "simple-jdbc-pool-worker");
+                    t.setDaemon(true);
+                    return t;
+                });
+            }
+            return worker;
+        }
+    }
+
+    /**
+     * Configures the pool.
+     * @param cnf user supplied configurator 
+     */
+    public void configure(Consumer<Config> cnf) {
+        cnf.accept(config);
+    }
+
+    /**
+     * @return number of prepared statements taken from the statement cache
+     */
+    public long getStatementCacheHits() {
+        return metrics.statementCacheHits.sum();
+    }
+
+    /**
+     * @return number of prepared statements which were not found in the statement cache
+     */
+    public long getStatementCacheMisses() {
+        return metrics.statementCacheMisses.sum();
+    }
+
+    /**
+     * @return pool metrics
+     */
+    public PoolMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return SQL profiler or null if {@link Config#sqlProfiling} is not enabled
+     */
+    public SqlProfiler getSqlProfiler() {
+        return profiler;
+    }
+
+    private void exportMetrics(PoolMetrics.Exporter exporter) {
+        try {
+            exporter.export(config.poolName, metrics.snapshot());
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "Error exporting metrics", e);
+        }
+    }
+
+    /**
+     * @return number of opened connections, both idle and checked out
+     */
+    public int getTotalConnections() {
+        return pool.size();
+    }
+
+    /**
+     * @return number of idle connections
+     */
+    public int getIdleConnections() {
+        return pool.getCount(ConcurrentBag.STATE_NOT_IN_USE);
+    }
+
+    /**
+     * @return number of threads waiting for the connection
+     */
+    public int getWaitingThreads() {
+        return pool.getWaitingThreadCount();
+    }
+
+    /**
+     * @return number of queued {@link #getConnectionAsync(Duration)} requests
+     */
+    public int getAsyncWaiters() {
+        return asyncWaiting.get();
+    }
+
+    /**
+     * @return circuit breaker state, always CLOSED if circuit breaker is disabled
+     */
+    public CircuitBreaker.State getCircuitBreakerState() {
+        return breaker.getState();
+    }
+
+    /**
+     * @return true if the last attempt to open connection to the database failed
+     */
+    public boolean isConnectFailing() {
+        return connectFailing;
+    }
+
+    /**
+     * @return true if pool is stopped
+     */
+    public boolean isStopped() {
+        return pool.isClosed();
+    }
+
+    /**
+     * Checks connection validity.
+     * @param c connection to validate
+     * @param timeout validation timeout, rounded up to whole seconds as required by {@link Connection#isValid(int)},
+     * so sub-second timeout does not turn into no timeout
+     * @return true if connection is valid, otherwise - false
+     */
+    public static boolean isValid(PooledConnection c, Duration timeout) {
+        boolean valid = false;
+        try {
+            long seconds = timeout.getSeconds() + (timeout.getNano() > 0 ? 1 : 0);
+            valid = c.isValid((int) Math.min(Integer.MAX_VALUE, Math.max(0, seconds)));
+        } catch (SQLException e) {
+            logger.log(Level.TRACE, "Error validating connection", e);
+        }
+        if (valid) {
+            c.lastValidationTime = System.nanoTime();
+        }
+        return valid;
+    }    
+
+    /**
+     * Periodic pool maintenance.
+     */
+    private void housekeep() {
+        if (config.detectOrphanConnections) {
+            checkOrphan();
+        }
+        if (getMinPoolSize() < config.poolSize) {
+            evictIdleConnections();
+        }
+        if (!config.keepaliveInterval.isZero()) {
+            keepalive();
+        }
+        if (!config.maxLifetime.isZero()) {
+            rotateExpiredConnections();
+        }
+        if (!keyedPools.isEmpty()) {
+            keyedPools.values().forEach(SimpleJDBCConnectionPool::housekeep);
+            evictIdleKeyedPools();
+        }
+    }
+
+    /**
+     * Stops and removes keyed sub-pools which were not used during {@link Config#keyedPoolIdleTimeout}
+     * and have no connections in use or waiting clients.
+     */
+    private void evictIdleKeyedPools() {
+        long timeout = config.keyedPoolIdleTimeout.toNanos();
+        if (timeout <= 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        for (Map.Entry<Credentials, SimpleJDBCConnectionPool> e : keyedPools.entrySet()) {
+            SimpleJDBCConnectionPool p = e.getValue();
+            if (now - p.lastKeyedUse > timeout && p.pool.getCount(ConcurrentBag.STATE_IN_USE) == 0
+                    && p.pool.getWaitingThreadCount() == 0 && p.asyncWaiting.get() == 0
+                    && keyedPools.remove(e.getKey(), p)) {
+                logger.log(Level.DEBUG, "Stopping idle keyed pool " + p.config.poolName);
+                p.stop();
+            }
+        }
+    }
+
+    /**
+     * Replaces connections which exceeded their lifetime.
+     * 
+     * Replacement connection is opened first, and only then expired connection is retired,
+     * immediately if it is idle or on return to the pool if it is in use. So pool capacity does not drop,
+     * pool temporarily grows by at most {@link Config#maxPendingConnections} connections instead.
+     * If the global limit of keyed pools is reached, idle expired connection is closed first and then replaced,
+     * and connection in use is replaced on return.
+     * At most {@link Config#maxPendingConnections} connections are replaced simultaneously.
+     */
+    private void rotateExpiredConnections() {
+        long now = System.nanoTime();
+        for (PooledConnection c : pool.values()) {
+            if (c.rotating || c.expirationTime == Long.MAX_VALUE || now - c.expirationTime < 0) {
+                continue;
+            }
+            if (rotatingConnections.get() >= config.maxPendingConnections) {
+                return;
+            }
+            if (!reserveLocalSlot(config.poolSize + config.maxPendingConnections)) {
+                return; //wait until expired connections in use are returned
+            }
+            if (root().reserveGlobalSlot(this)) {
+                rotatingConnections.incrementAndGet();
+                c.rotating = true;
+                acquireDbConnection().whenComplete((v, e) -> {
+                    rotatingConnections.decrementAndGet();
+                    if (e != null) {
+                        c.rotating = false; //try again later, slot is released by acquireDbConnection
+                        return;
+                    }
+                    c.retireOnReturn = true;
+                    if (pool.reserve(c)) {
+                        retireConnection(c);
+                    }
+                });
+            } else {
+                totalConnections.decrementAndGet();
+                rotateClosingFirst(c);
+            }
+        }
+    }
+
+    /**
+     * Replaces expired connection when global limit of keyed pools is reached,
+     * idle connection is closed first and then replaced, connection in use is replaced on return.
+     * @param c expired connection
+     */
+    private void rotateClosingFirst(PooledConnection c) {
+        if (pool.reserve(c)) {
+            retireConnection(c);
+            if (reserveSlot()) {
+                rotatingConnections.incrementAndGet();
+                acquireDbConnection().whenComplete((v, e) -> rotatingConnections.decrementAndGet());
+            }
+        } else if (c.getState() == ConcurrentBag.STATE_IN_USE) {
+            c.retireOnReturn = true;
+        }
+    }
+
+    /**
+     * Validates idle connections which were not used or validated during {@link Config#keepaliveInterval},
+     * at most {@link Config#keepaliveBatchSize} connections per run.
+     * Connections are reserved by the housekeeper and validated by the worker thread,
+     * so slow database does not delay asynchronous client timeouts fired by the housekeeper.
+     * Dead connections are replaced by the new ones.
+     */
+    private void keepalive() {
+        long now = System.nanoTime();
+        long interval = config.keepaliveInterval.toNanos();
+        List<PooledConnection> batch = new ArrayList<>();
+        for (PooledConnection c : pool.values(ConcurrentBag.STATE_NOT_IN_USE)) {
+            if (batch.size() >= config.keepaliveBatchSize) {
+                break;
+            }
+            if (now - c.getLastActivityTime() >= interval && pool.reserve(c)) {
+                batch.add(c);
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            getWorker().execute(() -> batch.forEach(this::keepaliveConnection));
+        } catch (RejectedExecutionException e) {
+            batch.forEach(this::closeConnection); //pool is stopped
+        }
+    }
+
+    /**
+     * Validates reserved idle connection, returns it to the pool if it is alive, otherwise replaces it.
+     * @param con reserved connection
+     */
+    private void keepaliveConnection(PooledConnection con) {
+        if (pool.isClosed()) {
+            closeConnection(con);
+        } else if (!validate(con)) {
+            handleInvalidConnection(con);
+        } else {
+            pool.unreserve(con);
+            if (pool.isClosed() && pool.reserve(con)) {
+                closeConnection(con); //pool was stopped while connection was being validated
+            }
+        }
+    }
+
+    /**
+     * Closes connections which are idle longer than {@link Config#idleTimeout}
+     * until pool shrinks to its min size.
+     */
+    private void evictIdleConnections() {
+        long now = System.nanoTime();
+        long idleTimeout = config.idleTimeout.toNanos();
+        for (PooledConnection c : pool.values(ConcurrentBag.STATE_NOT_IN_USE)) {
+            if (totalConnections.get() <= getMinPoolSize()) {
+                return;
+            }
+            if (now - c.lastAccessTime > idleTimeout && pool.reserve(c)) {
+                retireConnection(c);
+            }
+        }
+    }
+
+    /**
+     * Opens new connections in the background when there are threads waiting for connection.
+     * Number of simultaneously opening connections is limited by {@link Config#maxPendingConnections},
+     * so burst of requests does not open all connections at once.
+     */
+    private void growPool() {
+        if (breaker.isOpen()) {
+            return;
+        }
+        int waiting = pool.getWaitingThreadCount() + asyncWaiting.get();
+        while (true) {
+            int pending = pendingConnections.get();
+            if (pending >= Math.min(waiting, config.maxPendingConnections)) {
+                return;
+            }
+            if (pendingConnections.compareAndSet(pending, pending + 1)) {
+                if (!reserveSlot()) {
+                    pendingConnections.decrementAndGet();
+                    return;
+                }
+                acquireDbConnection().whenComplete((v, e) -> {
+                    pendingConnections.decrementAndGet();
+                    if (pool.getWaitingThreadCount() + asyncWaiting.get() > 0) {
+                        growPool();
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Reserves place for the new connection if pool did not reach its max size
+     * and {@link Config#maxTotalConnections} is not exceeded.
+     * @return true if place is reserved
+     */
+    private boolean reserveSlot() {
+        if (!reserveLocalSlot(config.poolSize)) {
+            return false;
+        }
+        if (!root().reserveGlobalSlot(this)) {
+            totalConnections.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Reserves place for the new connection in this pool only.
+     * @param maxSize max number of connections
+     * @return true if place is reserved
+     */
+    private boolean reserveLocalSlot(int maxSize) {
+        int total;
+        do {
+            total = totalConnections.get();
+            if (total >= maxSize || pool.isClosed()) {
+                return false;
+            }
+        } while (!totalConnections.compareAndSet(total, total + 1));
+        return true;
+    }
+
+    /**
+     * Releases place of the closed or not opened connection.
+     */
+    private void releaseSlot() {
+        totalConnections.decrementAndGet();
+        root().globalConnections.decrementAndGet();
+    }
+
+    /**
+     * @return root pool
+     */
+    private SimpleJDBCConnectionPool root() {
+        return parent != null ? parent : this;
+    }
+
+    /**
+     * Reserves place for the new connection of the root pool or any keyed sub-pool.
+     * If all places are taken, steals idle connection from another pool.
+     * @param requester pool which needs new connection
+     * @return true if place is reserved
+     */
+    private boolean reserveGlobalSlot(SimpleJDBCConnectionPool requester) {
+        while (true) {
+            int max = config.maxTotalConnections;
+            int total = globalConnections.get();
+            if (max <= 0 || total < max) {
+                if (globalConnections.compareAndSet(total, total + 1)) {
+                    return true;
+                }
+            } else if (!stealIdleConnection(requester)) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Closes the longest idle connection of another pool which is above its min size.
+     * @param requester pool which needs new connection
+     * @return false if there are no connections to steal
+     */
+    private boolean stealIdleConnection(SimpleJDBCConnectionPool requester) {
+        List<SimpleJDBCConnectionPool> pools = new ArrayList<>(keyedPools.values());
+        pools.add(this);
+        SimpleJDBCConnectionPool owner = null;
+        PooledConnection victim = null;
+        for (SimpleJDBCConnectionPool p : pools) {
+            if (p == requester || p.totalConnections.get() <= p.getMinPoolSize()) {
+                continue;
+            }
+            for (PooledConnection c : p.pool.values(ConcurrentBag.STATE_NOT_IN_USE)) {
+                if (victim == null || c.lastAccessTime - victim.lastAccessTime < 0) {
+                    owner = p;
+                    victim = c;
+                }
+            }
+        }
+        if (victim == null) {
+            return false;
+        }
+        if (owner.pool.reserve(victim)) {
+            logger.log(Level.DEBUG, "Closing idle connection of " + owner.config.poolName
+                    + " for " + requester.config.poolName);
+            owner.retireConnection(victim);
+        }
+        return true;
+    }
+
+    /**
+     * @return min number of connections kept in the pool
+     */
+    private int getMinPoolSize() {
+        return config.minIdle < 0 ? config.poolSize : Math.min(config.minIdle, config.poolSize);
+    }
+
+    /**
+     * Changes max pool size at runtime.
+     * 
+     * Fixed pool opens new connections or closes excess ones right away. Elastic pool grows on demand,
+     * excess connections are closed right away if idle, otherwise when they are returned to the pool.
+     * @param poolSize new max number of connections
+     */
+    public void resize(int poolSize) {
+        if (poolSize < 1) {
+            throw new IllegalArgumentException("Pool size should be positive: " + poolSize);
+        }
+        int oldSize = config.poolSize;
+        config.poolSize = poolSize;
+        if (pool.isClosed()) {
+            return;
+        }
+        if (poolSize > oldSize) {
+            openConnections(getMinPoolSize() - totalConnections.get());
+            growPool();
+        } else if (poolSize < oldSize) {
+            shrinkPool();
+        }
+        logger.log(Level.INFO, config.poolName + " is resized from " + oldSize + " to " + poolSize);
+    }
+
+    /**
+     * Closes connections above pool size, idle ones right away, in use ones when they are returned.
+     */
+    private void shrinkPool() {
+        int excess = totalConnections.get() - config.poolSize;
+        for (PooledConnection c : pool.values()) {
+            if (c.rotating) {
+                excess--; //will be retired after its replacement is opened
+            }
+        }
+        for (PooledConnection c : pool.values(ConcurrentBag.STATE_NOT_IN_USE)) {
+            if (excess <= 0) {
+                return;
+            }
+            if (!c.rotating && pool.reserve(c)) {
+                retireConnection(c);
+                excess--;
+            }
+        }
+        for (PooledConnection c : pool.values(ConcurrentBag.STATE_IN_USE)) {
+            if (excess <= 0) {
+                return;
+            }
+            if (!c.retireOnReturn && !c.rotating) {
+                c.retireOnReturn = true;
+                excess--;
+            }
+        }
+    }
+
+    /**
+     * Replaces all connections with the new ones.
+     * Idle connections are replaced right away, connections in use - when they are returned to the pool.
+     * Could be used after database failover or credentials rotation.
+     */
+    public void softEvictConnections() {
+        for (PooledConnection c : pool.values()) {
+            c.retireOnReturn = true;
+        }
+        for (PooledConnection c : pool.values(ConcurrentBag.STATE_NOT_IN_USE)) {
+            if (pool.reserve(c)) {
+                handleInvalidConnection(c);
+            }
+        }
+    }
+
+    /**
+     * Checks if there are any orphan connections and 
+     * prints stack trace to the system logger with WARNING level.
+     * Each orphan connection is reported only once.
+     */
+    private void checkOrphan() {
+        long now = System.nanoTime();
+        long timeout = config.orphanTimeout.toNanos();
+        for (PooledConnection c : pool.values(ConcurrentBag.STATE_IN_USE)) {
+            if (!c.orphanReported && now - c.checkoutTime > timeout) {
+                c.orphanReported = true;
+                Throwable trace = c.checkoutTrace;
+                if (trace != null) {
+                    logger.log(Level.WARNING, "Orphaned connection detected, checked out at:", trace);
+                } else {
+                    logger.log(Level.WARNING, "Orphaned connection detected, checkout stack trace was not sampled");
+                }
+            }
+        }
+    }
+    
+    /**
+     * Gets connection from internal pool
+     * @param nanosTimeout how long to wait in nanoseconds
+     * @return connection or null if there are no available connections
+     */
+    private PooledConnection getConnectionFromPool(long nanosTimeout){
+        PooledConnection connection = null;
+        try {
+            connection = pool.borrow(nanosTimeout, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return connection;
+    }
+
+    /**
+     * Closes invalid or evicted connection and acquires a new one from external database
+     * if pool has place for it.
+     * @param con connection to close
+     */
+    private void handleInvalidConnection(PooledConnection con) {
+        retireConnection(con);
+        if (reserveSlot()) {
+            acquireDbConnection();
+        }
+    }
+
+    /**
+     * Removes checked out or reserved connection from the pool and closes it.
+     * @param con connection to retire
+     */
+    private void retireConnection(PooledConnection con) {
+        if (pool.remove(con)) {
+            releaseSlot();
+        }
+        closeConnection(con);
+    }
+
+    /**
+     * Closes physical connection.
+     * @param con connection to close
+     */
+    private void closeConnection(PooledConnection con) {
+        metrics.connectionsClosed.increment();
+        PoolEvents.CloseEvent event = new PoolEvents.CloseEvent();
+        event.begin();
+        try {
+            con.getDelegate().close();
+        } catch (SQLException e) {
+            logger.log(Level.TRACE, ERROR_CLOSING_CONNECTION, e);
+        }
+        if (event.isEnabled()) {
+            event.poolName = config.poolName;
+            event.commit();
+        }
+    }
+
+    /**
+     * Acquires connection asynchronously from external database.
+     * Caller should reserve place for the new connection with {@link #reserveSlot()}.
+     * @return completion stage of acquiring
+     */
+    private CompletionStage<Void> acquireDbConnection() {
+        return Retry.of(() -> {
+            if (breaker.isOpen()) {
+                throw new SQLTransientConnectionException(DATABASE_UNAVAILABLE);
+            }
+            return openConnection();
+        })
+        .withFixedDelay(config.retryDelay)
+        .retry(config.retryCount)
+        // acquiring may complete immediately, and caller may be the thread counted as waiter in the bag,
+        // so add connection in another thread to not spin in the hand-off waiting for ourselves
+        .thenAcceptAsync(this::addConnection)
+        .whenComplete((v, e) -> {
+            if (e != null) {
+                releaseSlot();
+                logger.log(Level.WARNING, "Could not open connection to " + connectionFactory, e);
+            }
+        });
+    }
+
+    /**
+     * Adds newly opened connection to the pool.
+     * Caller should reserve place for the connection with {@link #reserveSlot()}.
+     * @param c new connection
+     */
+    private void addConnection(PooledConnection c) {
+        if (pool.isClosed()) {
+            closeConnection(c);
+        } else {
+            pool.add(c);
+            if (!ready.isDone() && pool.size() >= readyThreshold) {
+                ready.complete(null);
+            }
+            serveAsyncWaiters();
+        }
+    }
+
+    /**
+     * Counts connect or validation failure, opens circuit breaker if failures reached {@link Config#circuitBreakerThreshold}.
+     * 
+     * When breaker opens, waiting clients are woken up to fail fast, asynchronous waiters are rejected,
+     * idle connections are closed as they are likely broken,
+     * and database probe is scheduled on the worker after {@link Config#circuitBreakerOpenTime}.
+     */
+    private void recordDatabaseFailure() {
+        if (!breaker.recordFailure(config.circuitBreakerThreshold) || pool.isClosed()) {
+            return;
+        }
+        logger.log(Level.WARNING, "Circuit breaker is open, database is considered unavailable");
+        pool.wakeWaiters();
+        AsyncWaiter waiter;
+        while ((waiter = pollAsyncWaiter()) != null) {
+            waiter.completeExceptionally(new SQLTransientConnectionException(DATABASE_UNAVAILABLE));
+        }
+        ScheduledExecutorService executor = getHousekeeper();
+        executor.execute(() -> {
+            for (PooledConnection c : pool.values(ConcurrentBag.STATE_NOT_IN_USE)) {
+                if (pool.reserve(c)) {
+                    retireConnection(c);
+                }
+            }
+        });
+        executor.schedule(() -> getWorker().execute(this::probeDatabase),
+                config.circuitBreakerOpenTime.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Resets failure counter, refills the pool if success closed the circuit breaker.
+     */
+    private void recordDatabaseSuccess() {
+        if (breaker.recordSuccess()) {
+            logger.log(Level.INFO, "Circuit breaker is closed, database is available");
+            openConnections(getMinPoolSize() - totalConnections.get());
+        }
+    }
+
+    /**
+     * Single probe of the database while circuit breaker is open.
+     * Successful probe closes the breaker, failed one opens it again and schedules the next probe.
+     */
+    private void probeDatabase() {
+        if (pool.isClosed() || !breaker.tryHalfOpen()) {
+            return;
+        }
+        boolean reserved = reserveSlot();
+        try {
+            PooledConnection c = openConnection();
+            if (reserved) {
+                addConnection(c);
+            } else {
+                closeConnection(c);
+            }
+        } catch (SQLException e) {
+            if (reserved) {
+                releaseSlot();
+            }
+            logger.log(Level.DEBUG, "Database probe failed", e);
+        }
+    }
+
+    /**
+     * Opens physical connection, executes {@link Config#connectionInitSql} if any
+     * and remembers connection defaults.
+     * @return pooled connection
+     * @throws SQLException if connection could not be opened or initialized
+     */
+    private PooledConnection openConnection() throws SQLException {
+        PoolEvents.ConnectEvent event = new PoolEvents.ConnectEvent();
+        event.begin();
+        long start = System.nanoTime();
+        Connection c;
+        try {
+            c = connectionFactory.createConnection();
+        } catch (SQLException e) {
+            metrics.connectFailures.increment();
+            commitConnectEvent(event, false);
+            connectFailing = true;
+            recordDatabaseFailure();
+            throw e;
+        }
+        try {
+            String initSql = config.connectionInitSql;
+            if (initSql != null) {
+                try (Statement st = c.createStatement()) {
+                    st.execute(initSql);
+                }
+            }
+            PooledConnection pc = new PooledConnection(c);
+            metrics.connectTime.record(System.nanoTime() - start);
+            metrics.connectionsCreated.increment();
+            commitConnectEvent(event, true);
+            connectFailing = false;
+            recordDatabaseSuccess();
+            return pc;
+        } catch (SQLException e) {
+            metrics.connectFailures.increment();
+            commitConnectEvent(event, false);
+            connectFailing = true;
+            recordDatabaseFailure();
+            c.close();
+            throw e;
+        }
+    }
+
+    private void commitConnectEvent(PoolEvents.ConnectEvent event, boolean success) {
+        if (event.isEnabled()) {
+            event.poolName = config.poolName;
+            event.success = success;
+            event.commit();
+        }
+    }
+
+    @Override
+    public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        throw new SQLException("Is not a wrapper for " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return false;
+    }
+
+    /**
+     * Gets connection with given credentials.
+     * 
+     * Connections of each user are kept in the separate keyed sub-pool of {@link Config#keyedPoolSize}
+     * connections, which is created on demand. Sub-pools share housekeeping thread and metrics of this pool,
+     * and total number of connections is limited by {@link Config#maxTotalConnections}.
+     * Connection factory should support credentials, see {@link ConnectionFactory#createConnection(String, String)}.
+     */
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        while (true) {
+            SimpleJDBCConnectionPool keyed = getKeyedPool(username, password);
+            try {
+                return keyed.getConnection();
+            } catch (SQLException e) {
+                if (!keyed.isStopped() || root().isStopped()) {
+                    throw e;
+                }
+                //idle sub-pool was evicted just after lookup, take the new one
+            }
+        }
+    }
+
+    /**
+     * Gets keyed sub-pool, creates and starts it on demand.
+     * @param username database user
+     * @param password user's password
+     * @return keyed sub-pool
+     * @throws SQLException if pool is stopped
+     */
+    private SimpleJDBCConnectionPool getKeyedPool(String username, String password) throws SQLException {
+        if (parent != null) {
+            return parent.getKeyedPool(username, password);
+        }
+        Credentials key = new Credentials(username, password);
+        SimpleJDBCConnectionPool keyed = keyedPools.get(key);
+        if (keyed != null) {
+            keyed.lastKeyedUse = System.nanoTime();
+            return keyed;
+        }
+        if (pool.isClosed()) {
+            throw new SQLException(POOL_IS_STOPPED);
+        }
+        Config cnf = config.copy();
+        cnf.poolSize = config.keyedPoolSize;
+        cnf.minIdle = config.keyedMinIdle;
+        cnf.poolName = config.poolName + "/" + username;
+        cnf.metricsExporter = null;
+        SimpleJDBCConnectionPool created = new SimpleJDBCConnectionPool(this,
+                () -> connectionFactory.createConnection(username, password), cnf);
+        keyed = keyedPools.putIfAbsent(key, created);
+        if (keyed == null) {
+            keyed = created;
+            created.start();
+            startHousekeeping();
+        }
+        keyed.lastKeyedUse = System.nanoTime();
+        return keyed;
+    }
+
+    /**
+     * @return number of keyed sub-pools
+     */
+    public int getKeyedPoolCount() {
+        return keyedPools.size();
+    }
+
+    /**
+     * Key of the keyed sub-pool.
+     */
+    private record Credentials(String username, String password) {
+        @Override
+        public String toString() {
+            return username;
+        }
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return DriverManager.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        DriverManager.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        DriverManager.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return DriverManager.getLoginTimeout();
+    }
+
+    /**
+     * Pending {@link #getConnectionAsync(Duration)} request.
+     */
+    private static final class AsyncWaiter extends CompletableFuture<Connection> {
+        final long startTime;
+
+        AsyncWaiter(long startTime) {
+            this.startTime = startTime;
+        }
+    }
+
+    /**
+     * Pool configuration parameters
+     */
+    public static class Config implements Cloneable {
+        // fields are volatile as some of them could be changed at runtime, see PoolControlMBean
+        /** Max number of connections in the pool. */
+        public volatile int poolSize = 10;
+        /** Min number of connections kept in the pool, negative value means fixed pool of {@link #poolSize} connections. */
+        public volatile int minIdle = -1;
+        /** Connections above {@link #minIdle} are closed after being idle for this time. */
+        public volatile Duration idleTimeout = Duration.ofMinutes(10);
+        /** Max number of connections opened simultaneously when pool grows or replaces expired connections. */
+        public volatile int maxPendingConnections = 2;
+        /** Max connection lifetime, zero means connections live until they become invalid. */
+        public volatile Duration maxLifetime = Duration.ZERO;
+        /** Each connection lifetime is randomly shortened by up to this fraction of {@link #maxLifetime}. */
+        public volatile double maxLifetimeJitter = 0.1;
+        /** Max number of connections opened simultaneously on the pool start, 0 means no limit. */
+        public volatile int startupParallelism = 4;
+        /** SQL executed once on each new connection, null means no initialization. */
+        public volatile String connectionInitSql = null;
+        
+        public volatile int retryCount = 10;
+        public volatile Duration retryDelay = Duration.ofSeconds(1);
+        
+        public volatile Duration clientTimeout = Duration.ofSeconds(10);
+        
+        public volatile boolean validateConnectionOnCheckout = true;
+        public volatile Duration connectionValidationTimeout = Duration.ofSeconds(10);
+        /** Checkout validation is skipped if connection was used or validated within this window. */
+        public volatile Duration validationBypassWindow = Duration.ZERO;
+        /** Idle connections are validated in the background with this interval, zero disables keepalive. */
+        public volatile Duration keepaliveInterval = Duration.ZERO;
+        /** Max number of idle connections validated by the single keepalive run. */
+        public volatile int keepaliveBatchSize = 5;
+
+        public volatile boolean detectOrphanConnections = false;
+        public volatile Duration orphanTimeout = Duration.ofSeconds(30);
+        /** Checkout stack trace is captured for each N-th checkout on average, 0 disables stack traces. */
+        public volatile int orphanStackTraceSampling = 1;
+
+        /** Max number of cached prepared statements per connection, 0 disables the cache. */
+        public volatile int statementCacheSize = 0;
+        /** Close statements and their result sets which client left open when connection is returned to the pool. */
+        public volatile boolean trackStatements = true;
+        /** Profile execution time, affected rows and errors per normalized SQL, see {@link SqlProfiler}. */
+        public volatile boolean sqlProfiling = false;
+        /** Max number of SQL statements kept by the profiler. */
+        public volatile int sqlProfilerSize = 1000;
+
+        /** Max number of clients waiting for connection, others are rejected immediately, 0 means no limit. */
+        public volatile int maxWaiters = 0;
+        /** Reject client immediately if estimated wait time exceeds client's timeout. */
+        public volatile boolean loadShedding = false;
+        /**
+         * Return logical connections which take physical connection from the pool on the first statement
+         * and return it after each statement while auto-commit is on.
+         */
+        public volatile boolean lazyConnectionBinding = false;
+
+        /** Adjust {@link #poolSize} to the measured load, see {@link PoolAutotuner}. */
+        public volatile boolean autotune = false;
+        /** How often pool size is adjusted. */
+        public volatile Duration autotuneInterval = Duration.ofSeconds(10);
+        /** Autotuner does not shrink pool below this size. */
+        public volatile int autotuneMinSize = 1;
+        /** Autotuner does not grow pool above this size. */
+        public volatile int autotuneMaxSize = 50;
+        /** Spare capacity above the estimated number of busy connections, as a fraction. */
+        public volatile double autotuneHeadroom = 0.2;
+        /** Pool size is not changed if the estimate differs from it by less than this fraction. */
+        public volatile double autotuneHysteresis = 0.1;
+        /** Max number of connections added or removed per interval. */
+        public volatile int autotuneMaxStep = 4;
+        /** Growth is reverted if mean hold time grew by more than this fraction after it. */
+        public volatile double autotuneBackoffThreshold = 0.25;
+
+        /** Max number of connections of this pool and all its keyed sub-pools, 0 means no limit. */
+        public volatile int maxTotalConnections = 0;
+        /** Max number of connections per user of {@link SimpleJDBCConnectionPool#getConnection(String, String)}. */
+        public volatile int keyedPoolSize = 5;
+        /** Min number of connections kept per user. */
+        public volatile int keyedMinIdle = 0;
+        /** Keyed sub-pool which was not used during this time is stopped and removed, zero keeps sub-pools forever. */
+        public volatile Duration keyedPoolIdleTimeout = Duration.ofMinutes(10);
+
+        /** Number of consecutive connect or validation failures which opens circuit breaker, 0 disables circuit breaker. */
+        public volatile int circuitBreakerThreshold = 0;
+        /** How long circuit breaker stays open before the database is probed. */
+        public volatile Duration circuitBreakerOpenTime = Duration.ofSeconds(5);
+
+        /** Register {@link PoolControlMBean} in the platform MBean server on start. */
+        public volatile boolean registerMBean = false;
+        /** Pool name used to distinguish pools in metrics, logs and JMX. */
+        public volatile String poolName = "simple-jdbc-pool";
+        /** Receives pool metrics snapshots periodically, null disables export. */
+        public volatile PoolMetrics.Exporter metricsExporter = null;
+        public volatile Duration metricsExportInterval = Duration.ofSeconds(60);
+
+        /**
+         * @return copy of this configuration
+         */
+        Config copy() {
+            try {
+                return (Config) super.clone();
+            } catch (CloneNotSupportedException e) {
+                throw new AssertionError(e);
+            }
+        }
+    }
+
+    /**
+     * Wrapper class for the physical DB connection.
+     * 
+     * Delegates calls to the physical connection.
+     * Overrides {@link #close()} method to return connection to the pool.
+     * 
+     * @author skopylov@gmail.com
+     *
+     */
+    class PooledConnection implements Connection, ConcurrentBag.Entry {
+        
+        private final Connection delegate;
+        private final AtomicInteger state = new AtomicInteger(ConcurrentBag.STATE_NOT_IN_USE);
+        private final StatementCache statementCache;
+        private final StatementTracker statementTracker;
+
+        // orphan detection
+        private volatile long checkoutTime;
+        private volatile Throwable checkoutTrace;
+        private volatile boolean orphanReported;
+
+        // connection state tracking
+        private static final int DIRTY_AUTOCOMMIT = 1;
+        private static final int DIRTY_ISOLATION = 1 << 1;
+        private static final int DIRTY_READONLY = 1 << 2;
+        private static final int DIRTY_CATALOG = 1 << 3;
+        private static final int DIRTY_SCHEMA = 1 << 4;
+        private static final int DIRTY_NETWORK_TIMEOUT = 1 << 5;
+        private static final int UNKNOWN_NETWORK_TIMEOUT = -1;
+
+        private final boolean defaultAutoCommit;
+        private final int defaultIsolation;
+        private final boolean defaultReadOnly;
+        private final String defaultCatalog;
+        private final String defaultSchema;
+        private final int defaultNetworkTimeout;
+        private int dirtyBits;
+        private boolean autoCommit;
+
+        // lifetime
+        private final long expirationTime;
+        private volatile boolean rotating;
+        private volatile boolean retireOnReturn;
+
+        private volatile long lastAccessTime = System.nanoTime();
+        private volatile long lastValidationTime = lastAccessTime;
+        
+        /**
+         * Constructor, remembers current connection state as defaults which are restored on return to the pool.
+         * @param c physical DB connection
+         * @throws SQLException if connection state could not be read
+         */
+        PooledConnection(Connection c) throws SQLException {
+            delegate = c;
+            statementCache = config.statementCacheSize > 0
+                    ? new StatementCache(config.statementCacheSize, metrics.statementCacheHits, metrics.statementCacheMisses)
+                    : null;
+            statementTracker = config.trackStatements ? new StatementTracker() : null;
+            defaultAutoCommit = c.getAutoCommit();
+            autoCommit = defaultAutoCommit;
+            defaultIsolation = c.getTransactionIsolation();
+            defaultReadOnly = c.isReadOnly();
+            defaultCatalog = c.getCatalog();
+            String schema = null;
+            try {
+                schema = c.getSchema();
+            } catch (SQLException | AbstractMethodError e) {
+                logger.log(Level.TRACE, "Schema is not supported", e);
+            }
+            defaultSchema = schema;
+            int networkTimeout = UNKNOWN_NETWORK_TIMEOUT;
+            try {
+                networkTimeout = c.getNetworkTimeout();
+            } catch (SQLException | AbstractMethodError e) {
+                logger.log(Level.TRACE, "Network timeout is not supported", e);
+            }
+            defaultNetworkTimeout = networkTimeout;
+            long lifetime = config.maxLifetime.toNanos();
+            if (lifetime > 0) {
+                lifetime -= (long) (lifetime * config.maxLifetimeJitter * ThreadLocalRandom.current().nextDouble());
+                expirationTime = lastAccessTime + lifetime;
+            } else {
+                expirationTime = Long.MAX_VALUE;
+            }
+        }
+        
+        /**
+         * Gets physical connection
+         * @return physical connection
+         */
+        public Connection getDelegate() {
+            return delegate;
+        }
+
+        /**
+         * Marks or clears connection property as changed against the default value.
+         * @param bit property bit
+         * @param dirty true if property differs from the default
+         */
+        private void markDirty(int bit, boolean dirty) {
+            dirtyBits = dirty ? dirtyBits | bit : dirtyBits & ~bit;
+        }
+
+        private Statement track(Statement s) {
+            if (profiler != null) {
+                s = profiler.wrap(this, s);
+            }
+            return statementTracker != null ? statementTracker.track(this, s) : s;
+        }
+
+        private PreparedStatement track(String sql, PreparedStatement ps) {
+            if (profiler != null) {
+                ps = profiler.wrap(this, ps, sql);
+            }
+            return statementTracker != null ? statementTracker.track(this, ps) : ps;
+        }
+
+        private CallableStatement track(String sql, CallableStatement cs) {
+            if (profiler != null) {
+                cs = profiler.wrap(this, cs, sql);
+            }
+            return statementTracker != null ? statementTracker.track(this, cs) : cs;
+        }
+
+        /**
+         * Closes statements which client left open.
+         */
+        private void closeLeakedStatements() {
+            if (statementTracker != null) {
+                int leaked = statementTracker.closeAll();
+                if (leaked > 0) {
+                    metrics.leakedStatements.add(leaked);
+                    logger.log(Level.DEBUG, () -> "Closed " + leaked + " statement(s) left open by the client");
+                }
+            }
+        }
+
+        /**
+         * Rolls back uncommitted transaction and restores changed connection properties to their defaults.
+         * Connection in manual commit mode is always rolled back, as any statement,
+         * including the one created before auto-commit was turned off, could start a transaction.
+         * Connection switched back to auto-commit mode has nothing to roll back, as switching commits the transaction.
+         * @return true if connection state was reset, false if connection is broken
+         */
+        private boolean resetState() {
+            try {
+                if (!autoCommit) {
+                    delegate.rollback();
+                }
+                if (dirtyBits != 0) {
+                    if ((dirtyBits & DIRTY_AUTOCOMMIT) != 0) {
+                        delegate.setAutoCommit(defaultAutoCommit);
+                        autoCommit = defaultAutoCommit;
+                    }
+                    if ((dirtyBits & DIRTY_ISOLATION) != 0) {
+                        delegate.setTransactionIsolation(defaultIsolation);
+                    }
+                    if ((dirtyBits & DIRTY_READONLY) != 0) {
+                        delegate.setReadOnly(defaultReadOnly);
+                    }
+                    if ((dirtyBits & DIRTY_CATALOG) != 0) {
+                        delegate.setCatalog(defaultCatalog);
+                    }
+                    if ((dirtyBits & DIRTY_SCHEMA) != 0) {
+                        delegate.setSchema(defaultSchema);
+                    }
+                    if ((dirtyBits & DIRTY_NETWORK_TIMEOUT) != 0) {
+                        delegate.setNetworkTimeout(Runnable::run, defaultNetworkTimeout);
+                    }
+                    dirtyBits = 0;
+                }
+                return true;
+            } catch (SQLException e) {
+                logger.log(Level.TRACE, "Error resetting connection state", e);
+                return false;
+            }
+        }
+
+        /**
+         * @return time of the last connection use or successful validation
+         */
+        long getLastActivityTime() {
+            long accessed = lastAccessTime;
+            long validated = lastValidationTime;
+            return validated - accessed > 0 ? validated : accessed;
+        }
+
+        /**
+         * Remembers checkout time for metrics and orphan detection,
+         * and (possibly) checkout stack trace for orphan detection.
+         * Stack trace elements are materialized only if connection is reported as orphan.
+         */
+        void trackCheckout() {
+            checkoutTime = System.nanoTime();
+            metrics.checkouts.increment();
+            if (config.detectOrphanConnections) {
+                int sampling = config.orphanStackTraceSampling;
+                if (sampling == 1 || (sampling > 1 && ThreadLocalRandom.current().nextInt(sampling) == 0)) {
+                    checkoutTrace = new Throwable("Connection checkout");
+                }
+            }
+        }
+
+        @Override
+        public int getState() {
+            return state.get();
+        }
+
+        @Override
+        public void setState(int newState) {
+            state.set(newState);
+        }
+
+        @Override
+        public boolean compareAndSetState(int expected, int newState) {
+            return state.compareAndSet(expected, newState);
+        }
+
+        @SuppressWarnings("unchecked")
+        public <T> T unwrap(Class<T> iface) throws SQLException {
+            if (isWrapperFor(iface)) {
+                return (T) delegate;
+            }
+            throw new SQLException("Not a wrapper for " + iface.getClass().getName());
+        }
+
+        @Override
+        public boolean isWrapperFor(Class<?> iface) throws SQLException {
+            return iface != null && iface.isAssignableFrom(delegate.getClass());
+        }
+
+        @Override
+        public Statement createStatement() throws SQLException {
+            return track(delegate.createStatement());
+        }
+
+        @Override
+        public PreparedStatement prepareStatement(String sql) throws SQLException {
+            if (statementCache != null) {
+                return track(sql, statementCache.prepare(this, new StatementCache.Key(sql),
+                        () -> delegate.prepareStatement(sql)));
+            }
+            return track(sql, delegate.prepareStatement(sql));
+        }
+
+        @Override
+        public CallableStatement prepareCall(String sql) throws SQLException {
+            return track(sql, delegate.prepareCall(sql));
+        }
+
+        @Override
+        public String nativeSQL(String sql) throws SQLException {
+            return delegate.nativeSQL(sql);
+        }
+
+        @Override
+        public void setAutoCommit(boolean autoCommit) throws SQLException {
+            delegate.setAutoCommit(autoCommit);
+            this.autoCommit = autoCommit;
+            markDirty(DIRTY_AUTOCOMMIT, autoCommit != defaultAutoCommit);
+        }
+
+        @Override
+        public boolean getAutoCommit() throws SQLException {
+            return delegate.getAutoCommit();
+        }
+
+        @Override
+        public void commit() throws SQLException {
+            delegate.commit();
+        }
+
+        @Override
+        public void rollback() throws SQLException {
+            delegate.rollback();
+        }
+
+        @Override
+        public void close() throws SQLException {
+            if (getState() != ConcurrentBag.STATE_IN_USE) {
+                return; //already returned to the pool
+            }
+            long holdNanos = System.nanoTime() - checkoutTime;
+            metrics.holdTime.record(holdNanos);
+            PoolEvents.ReleaseEvent event = new PoolEvents.ReleaseEvent();
+            if (event.isEnabled()) {
+                event.poolName = config.poolName;
+                event.holdTime = holdNanos;
+                event.commit();
+            }
+            closeLeakedStatements();
+            if (config.detectOrphanConnections) {
+                checkoutTrace = null;
+                if (orphanReported) {
+                    orphanReported = false;
+                    logger.log(Level.INFO, "Orphaned connection returned to the pool after "
+                            + Duration.ofNanos(System.nanoTime() - checkoutTime));
+                }
+            }
+            if (retireOnReturn) {
+                if (rotating) {
+                    retireConnection(this); //replacement is already opened
+                } else {
+                    handleInvalidConnection(this);
+                }
+                return;
+            }
+            if (!resetState()) {
+                handleInvalidConnection(this);
+                return;
+            }
+            lastAccessTime = System.nanoTime();
+            releaseConnection(this);
+        }
+
+        @Override
+        public boolean isClosed() throws SQLException {
+            return delegate.isClosed();
+        }
+
+        @Override
+        public DatabaseMetaData getMetaData() throws SQLException {
+            return delegate.getMetaData();
+        }
+
+        @Override
+        public void setReadOnly(boolean readOnly) throws SQLException {
+            delegate.setReadOnly(readOnly);
+            markDirty(DIRTY_READONLY, readOnly != defaultReadOnly);
+        }
+
+        @Override
+        public boolean isReadOnly() throws SQLException {
+            return delegate.isReadOnly();
+        }
+
+        @Override
+        public void setCatalog(String catalog) throws SQLException {
+            delegate.setCatalog(catalog);
+            markDirty(DIRTY_CATALOG, !Objects.equals(catalog, defaultCatalog));
+        }
+
+        @Override
+        public String getCatalog() throws SQLException {
+            return delegate.getCatalog();
+        }
+
+        @Override
+        public void setTransactionIsolation(int level) throws SQLException {
+            delegate.setTransactionIsolation(level);
+            markDirty(DIRTY_ISOLATION, level != defaultIsolation);
+        }
+
+        @Override
+        public int getTransactionIsolation() throws SQLException {
+            return delegate.getTransactionIsolation();
+        }
+
+        @Override
+        public SQLWarning getWarnings() throws SQLException {
+            return delegate.getWarnings();
+        }
+
+        @Override
+        public void clearWarnings() throws SQLException {
+            delegate.clearWarnings();
+        }
+
+        @Override
+        public Statement createStatement(int resultSetType, int resultSetConcurrency) throws SQLException {
+            return track(delegate.createStatement(resultSetType, resultSetConcurrency));
+        }
+
+        @Override
+        public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency)
+                throws SQLException {
+            if (statementCache != null) {
+                var key = new StatementCache.Key(sql, resultSetType, resultSetConcurrency,
+                        StatementCache.UNSPECIFIED, StatementCache.UNSPECIFIED, null, null);
+                return track(sql, statementCache.prepare(this, key,
+                        () -> delegate.prepareStatement(sql, resultSetType, resultSetConcurrency)));
+            }
+            return track(sql, delegate.prepareStatement(sql, resultSetType, resultSetConcurrency));
+        }
+
+        @Override
+        public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency)
+                throws SQLException {
+            return track(sql, delegate.prepareCall(sql, resultSetType, resultSetConcurrency));
+        }
+
+        @Override
+        public Map<String, Class<?>> getTypeMap() throws SQLException {
+            return delegate.getTypeMap();
+        }
+
+        @Override
+        public void setTypeMap(Map<String, Class<?>> map) throws SQLException {
+            delegate.setTypeMap(map);
+        }
+
+        @Override
+        public void setHoldability(int holdability) throws SQLException {
+            delegate.setHoldability(holdability);
+        }
+
+        @Override
+        public int getHoldability() throws SQLException {
+            return delegate.getHoldability();
+        }
+
+        @Override
+        public Savepoint setSavepoint() throws SQLException {
+            return delegate.setSavepoint();
+        }
+
+        @Override
+        public Savepoint setSavepoint(String name) throws SQLException {
+            return delegate.setSavepoint(name);
+        }
+
+        @Override
+        public void rollback(Savepoint savepoint) throws SQLException {
+            delegate.rollback(savepoint);
+        }
+
+        @Override
+        public void releaseSavepoint(Savepoint savepoint) throws SQLException {
+            delegate.releaseSavepoint(savepoint);
+        }
+
+        @Override
+        public Statement createStatement(int resultSetType, int resultSetConcurrency, int resultSetHoldability)
+                throws SQLException {
+            return track(delegate.createStatement(resultSetType, resultSetConcurrency, resultSetHoldability));
+        }
+
+        @Override
+        public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency,
+                int resultSetHoldability) throws SQLException {
+            if (statementCache != null) {
+                var key = new StatementCache.Key(sql, resultSetType, resultSetConcurrency,
+                        resultSetHoldability, StatementCache.UNSPECIFIED, null, null);
+                return track(sql, statementCache.prepare(this, key,
+                        () -> delegate.prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability)));
+            }
+            return track(sql, delegate.prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability));
+        }
+
+        @Override
+        public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency,
+                int resultSetHoldability) throws SQLException {
+            return track(sql, delegate.prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability));
+        }
+
+        @Override
+        public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
+            if (statementCache != null) {
+                var key = new StatementCache.Key(sql, StatementCache.UNSPECIFIED, StatementCache.UNSPECIFIED,
+                        StatementCache.UNSPECIFIED, autoGeneratedKeys, null, null);
+                return track(sql, statementCache.prepare(this, key,
+                        () -> delegate.prepareStatement(sql, autoGeneratedKeys)));
+            }
+            return track(sql, delegate.prepareStatement(sql, autoGeneratedKeys));
+        }
+
+        @Override
+        public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
+            if (statementCache != null) {
+                var key = new StatementCache.Key(sql, StatementCache.UNSPECIFIED, StatementCache.UNSPECIFIED,
+                        StatementCache.UNSPECIFIED, StatementCache.UNSPECIFIED, columnIndexes.clone(), null);
+                return track(sql, statementCache.prepare(this, key,
+                        () -> delegate.prepareStatement(sql, columnIndexes)));
+            }
+            return track(sql, delegate.prepareStatement(sql, columnIndexes));
+        }
+
+        @Override
+        public PreparedStatement prepareStatement(String sql, String[] columnNames) throws SQLException {
+            if (statementCache != null) {
+                var key = new StatementCache.Key(sql, StatementCache.UNSPECIFIED, StatementCache.UNSPECIFIED,
+                        StatementCache.UNSPECIFIED, StatementCache.UNSPECIFIED, null, columnNames.clone());
+                return track(sql, statementCache.prepare(this, key,
+                        () -> delegate.prepareStatement(sql, columnNames)));
+            }
+            return track(sql, delegate.prepareStatement(sql, columnNames));
+        }
+
+        @Override
+        public Clob createClob() throws SQLException {
+            return delegate.createClob();
+        }
+
+        @Override
+        public Blob createBlob() throws SQLException {
+            return delegate.createBlob();
+        }
+
+        @Override
+        public NClob createNClob() throws SQLException {
+            return delegate.createNClob();
+        }
+
+        @Override
+        public SQLXML createSQLXML() throws SQLException {
+            return delegate.createSQLXML();
+        }
+
+        @Override
+        public boolean isValid(int timeout) throws SQLException {
+            return delegate.isValid(timeout);
+        }
+
+        @Override
+        public void setClientInfo(String name, String value) throws SQLClientInfoException {
+            delegate.setClientInfo(name, value);
+        }
+
+        @Override
+        public void setClientInfo(Properties properties) throws SQLClientInfoException {
+            delegate.setClientInfo(properties);
+        }
+
+        @Override
+        public String getClientInfo(String name) throws SQLException {
+            return delegate.getClientInfo(name);
+        }
+
+        @Override
+        public Properties getClientInfo() throws SQLException {
+            return delegate.getClientInfo();
+        }
+
+        @Override
+        public Array createArrayOf(String typeName, Object[] elements) throws SQLException {
+            return delegate.createArrayOf(typeName, elements);
+        }
+
+        @Override
+        public Struct createStruct(String typeName, Object[] attributes) throws SQLException {
+            return delegate.createStruct(typeName, attributes);
+        }
+
+        @Override
+        public void setSchema(String schema) throws SQLException {
+            delegate.setSchema(schema);
+            markDirty(DIRTY_SCHEMA, !Objects.equals(schema, defaultSchema));
+        }
+
+        @Override
+        public String getSchema() throws SQLException {
+            return delegate.getSchema();
+        }
+
+        @Override
+        public void abort(Executor executor) throws SQLException {
+            delegate.abort(executor);
+        }
+
+        @Override
+        public void setNetworkTimeout(Executor executor, int milliseconds) throws SQLException {
+            delegate.setNetworkTimeout(executor, milliseconds);
+            markDirty(DIRTY_NETWORK_TIMEOUT,
+                    defaultNetworkTimeout != UNKNOWN_NETWORK_TIMEOUT && milliseconds != defaultNetworkTimeout);
+        }
+
+        @Override
+        public int getNetworkTimeout() throws SQLException {
+            return delegate.getNetworkTimeout();
+        }
+    }
+}
@@ -0,0 +1,547 @@
+package com.github.skopylov58.jdbc.pool;
+
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-SQL execution profiler.
+ *
+ * Records execution time, affected rows and errors of the statements executed through pooled connections,
+ * keyed by normalized SQL - literals are replaced with {@code ?}, lists of placeholders are collapsed,
+ * comments and extra whitespace are removed, so statements differing only in parameters share the same entry.
+ * <p>
+ * Table is bounded and uses space-saving eviction: when table is full, new SQL replaces the entry with
+ * the least execution count and inherits its count as the count error, so frequent statements stay in the table
+ * even if many rare ones pass through. Recording to the existing entry is lock-free and does not allocate,
+ * only insertion of the new SQL takes the lock.
+ *
+ * @author skopylov@gmail.com
+ *
+ */
+public class SqlProfiler {
+
+    static final int MAX_SQL_LENGTH = 2048;
+
+    private final int capacity;
+    private final ConcurrentHashMap<String, Entry> table = new ConcurrentHashMap<>();
+
+    /**
+     * Execution statistics of the normalized SQL. Times are in nanoseconds.
+     * @param sql normalized SQL
+     * @param count number of executions
+     * @param countError max overestimation of the count, inherited from the evicted entry
+     * @param totalTime total execution time
+     * @param maxTime max execution time
+     * @param rows number of affected rows reported by updates and batches
+     * @param errors number of failed executions
+     */
+    public record Stats(String sql, long count, long countError, long totalTime, long maxTime, long rows, long errors) {
+        /**
+         * @return mean execution time
+         */
+        public long meanTime() {
+            return count == 0 ? 0 : totalTime / count;
+        }
+    }
+
+    private static final class Entry {
+        final String sql;
+        final long countError;
+        final LongAdder count = new LongAdder();
+        final LongAdder totalTime = new LongAdder();
+        final AtomicLong maxTime = new AtomicLong();
+        final LongAdder rows = new LongAdder();
+        final LongAdder errors = new LongAdder();
+
+        Entry(String sql, long countError) {
+            this.sql = sql;
+            this.countError = countError;
+        }
+
+        long estimatedCount() {
+            return count.sum() + countError;
+        }
+
+        Stats toStats() {
+            return new Stats(sql, count.sum(), countError, totalTime.sum(), maxTime.get(), rows.sum(), errors.sum());
+        }
+    }
+
+    @FunctionalInterface
+    private interface Execution<T> {
+        T execute() throws SQLException;
+    }
+
+    /**
+     * Constructor.
+     * @param capacity max number of profiled SQL statements
+     */
+    SqlProfiler(int capacity) {
+        this.capacity = Math.max(1, capacity);
+    }
+
+    /**
+     * Records statement execution.
+     * @param sql normalized SQL
+     * @param nanos execution time
+     * @param rows number of affected rows
+     * @param failed true if execution failed
+     */
+    void record(String sql, long nanos, long rows, boolean failed) {
+        Entry e = table.get(sql);
+        if (e == null) {
+            e = insert(sql);
+        }
+        e.count.increment();
+        e.totalTime.add(nanos);
+        long max = e.maxTime.get();
+        while (nanos > max && !e.maxTime.compareAndSet(max, nanos)) {
+            max = e.maxTime.get();
+        }
+        if (rows > 0) {
+            e.rows.add(rows);
+        }
+        if (failed) {
+            e.errors.increment();
+        }
+    }
+
+    private synchronized Entry insert(String sql) {
+        Entry e = table.get(sql);
+        if (e != null) {
+            return e;
+        }
+        long countError = 0;
+        if (table.size() >= capacity) {
+            Entry min = null;
+            long minCount = Long.MAX_VALUE;
+            for (Entry candidate : table.values()) {
+                long c = candidate.estimatedCount();
+                if (c < minCount) {
+                    min = candidate;
+                    minCount = c;
+                }
+            }
+            if (min != null) {
+                table.remove(min.sql);
+                countError = minCount;
+            }
+        }
+        e = new Entry(sql, countError);
+        table.put(sql, e);
+        return e;
+    }
+
+    /**
+     * @return statistics of all profiled statements
+     */
+    public List<Stats> snapshot() {
+        List<Stats> stats = new ArrayList<>(table.size());
+        for (Entry e : table.values()) {
+            stats.add(e.toStats());
+        }
+        return stats;
+    }
+
+    /**
+     * Gets statements which took most of the database time.
+     * @param n max number of statements to return
+     * @return statements sorted by total execution time, descending
+     */
+    public List<Stats> getSlowest(int n) {
+        return top(n, Comparator.comparingLong(Stats::totalTime));
+    }
+
+    /**
+     * Gets most frequently executed statements.
+     * @param n max number of statements to return
+     * @return statements sorted by execution count, descending
+     */
+    public List<Stats> getMostFrequent(int n) {
+        return top(n, Comparator.comparingLong(Stats::count));
+    }
+
+    private List<Stats> top(int n, Comparator<Stats> comparator) {
+        List<Stats> stats = snapshot();
+        stats.sort(comparator.reversed());
+        return stats.size() > n ? new ArrayList<>(stats.subList(0, n)) : stats;
+    }
+
+    /**
+     * Clears all statistics.
+     */
+    public void reset() {
+        table.clear();
+    }
+
+    /**
+     * @return number of profiled statements
+     */
+    public int size() {
+        return table.size();
+    }
+
+    /**
+     * Normalizes SQL - replaces string and numeric literals with {@code ?}, collapses lists of placeholders
+     * to the single one, removes comments and collapses whitespace. Quoted identifiers are kept as is.
+     * @param sql SQL statement
+     * @return normalized SQL, truncated to {@value #MAX_SQL_LENGTH} characters
+     */
+    static String normalize(String sql) {
+        if (sql == null) {
+            return "";
+        }
+        int len = sql.length();
+        StringBuilder out = new StringBuilder(Math.min(len, MAX_SQL_LENGTH));
+        int i = 0;
+        while (i < len && out.length() < MAX_SQL_LENGTH) {
+            char ch = sql.charAt(i);
+            if (Character.isWhitespace(ch)) {
+                while (i < len && Character.isWhitespace(sql.charAt(i))) {
+                    i++;
+                }
+                space(out);
+            } else if (ch == '-' && i + 1 < len && sql.charAt(i + 1) == '-') {
+                while (i < len && sql.charAt(i) != '\n') {
+                    i++;
+                }
+                space(out);
+            } else if (ch == '/' && i + 1 < len && sql.charAt(i + 1) == '*') {
+                int end = sql.indexOf("*/", i + 2);
+                i = end < 0 ? len : end + 2;
+                space(out);
+            } else if (ch == '\'') {
+                i++;
+                while (i < len) {
+                    if (sql.charAt(i) == '\'') {
+                        if (i + 1 < len && sql.charAt(i + 1) == '\'') {
+                            i += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    i++;
+                }
+                i++;
+                placeholder(out);
+            } else if (ch == '"') {
+                int end = sql.indexOf('"', i + 1);
+                end = end < 0 ? len : end + 1;
+                out.append(sql, i, end);
+                i = end;
+            } else if (Character.isDigit(ch) && !isIdentifierTail(out)) {
+                while (i < len && (Character.isLetterOrDigit(sql.charAt(i)) || sql.charAt(i) == '.')) {
+                    i++;
+                }
+                placeholder(out);
+            } else if (ch == '?') {
+                i++;
+                placeholder(out);
+            } else {
+                out.append(ch);
+                i++;
+            }
+        }
+        int end = out.length();
+        if (end > 0 && out.charAt(end - 1) == ' ') {
+            out.setLength(end - 1);
+        }
+        return out.length() > MAX_SQL_LENGTH ? out.substring(0, MAX_SQL_LENGTH) : out.toString();
+    }
+
+    private static void space(StringBuilder out) {
+        int n = out.length();
+        if (n > 0 && out.charAt(n - 1) != ' ') {
+            out.append(' ');
+        }
+    }
+
+    private static boolean isIdentifierTail(StringBuilder out) {
+        int n = out.length();
+        if (n == 0) {
+            return false;
+        }
+        char prev = out.charAt(n - 1);
+        return Character.isLetterOrDigit(prev) || prev == '_' || prev == '$';
+    }
+
+    /**
+     * Appends placeholder, unless it continues list of placeholders like {@code IN (?, ?, ?)}.
+     */
+    private static void placeholder(StringBuilder out) {
+        int j = out.length() - 1;
+        while (j >= 0 && out.charAt(j) == ' ') {
+            j--;
+        }
+        if (j >= 0 && out.charAt(j) == ',') {
+            j--;
+            while (j >= 0 && out.charAt(j) == ' ') {
+                j--;
+            }
+            if (j >= 0 && out.charAt(j) == '?') {
+                out.setLength(j + 1);
+                return;
+            }
+        }
+        out.append('?');
+    }
+
+    private <T> T profile(String sql, Execution<T> execution) throws SQLException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        T result = null;
+        try {
+            result = execution.execute();
+            failed = false;
+            return result;
+        } finally {
+            record(sql, System.nanoTime() - start, rows(result), failed);
+        }
+    }
+
+    private static long rows(Object result) {
+        if (result instanceof Integer i) {
+            return i;
+        }
+        if (result instanceof Long l) {
+            return l;
+        }
+        long rows = 0;
+        if (result instanceof int[] counts) {
+            for (int c : counts) {
+                rows += Math.max(c, 0);
+            }
+        } else if (result instanceof long[] counts) {
+            for (long c : counts) {
+                rows += Math.max(c, 0);
+            }
+        }
+        return rows;
+    }
+
+    Statement wrap(Connection connection, Statement statement) {
+        return new ProfiledStatement(connection, statement);
+    }
+
+    PreparedStatement wrap(Connection connection, PreparedStatement statement, String sql) {
+        return new ProfiledPreparedStatement(connection, statement, sql);
+    }
+
+    CallableStatement wrap(Connection connection, CallableStatement statement, String sql) {
+        return new ProfiledCallableStatement(connection, statement, sql);
+    }
+
+    /**
+     * Statement which profiles SQL passed to execute methods, batch is profiled by its first SQL.
+     */
+    private class ProfiledStatement extends DelegatingStatement<Statement> {
+        private String batchSql;
+
+        ProfiledStatement(Connection connection, Statement statement) {
+            super(connection, statement);
+        }
+
+        @Override
+        public ResultSet executeQuery(String sql) throws SQLException {
+            return profile(normalize(sql), () -> delegate.executeQuery(sql));
+        }
+
+        @Override
+        public int executeUpdate(String sql) throws SQLException {
+            return profile(normalize(sql), () -> delegate.executeUpdate(sql));
+        }
+
+        @Override
+        public int executeUpdate(String sql, int autoGeneratedKeys) throws SQLException {
+            return profile(normalize(sql), () -> delegate.executeUpdate(sql, autoGeneratedKeys));
+        }
+
+        @Override
+        public int executeUpdate(String sql, int[] columnIndexes) throws SQLException {
+            return profile(normalize(sql), () -> delegate.executeUpdate(sql, columnIndexes));
+        }
+
+        @Override
+        public int executeUpdate(String sql, String[] columnNames) throws SQLException {
+            return profile(normalize(sql), () -> delegate.executeUpdate(sql, columnNames));
+        }
+
+        @Override
+        public long executeLargeUpdate(String sql) throws SQLException {
+            return profile(normalize(sql), () -> delegate.executeLargeUpdate(sql));
+        }
+
+        @Override
+        public long executeLargeUpdate(String sql, int autoGeneratedKeys) throws SQLException {
+            return profile(normalize(sql), () -> delegate.executeLargeUpdate(sql, autoGeneratedKeys));
+        }
+
+        @Override
+        public long executeLargeUpdate(String sql, int[] columnIndexes) throws SQLException {
+            return profile(normalize(sql), () -> delegate.executeLargeUpdate(sql, columnIndexes));
+        }
+
+        @Override
+        public long executeLargeUpdate(String sql, String[] columnNames) throws SQLException {
+            return profile(normalize(sql), () -> delegate.executeLargeUpdate(sql, columnNames));
+        }
+
+        @Override
+        public boolean execute(String sql) throws SQLException {
+            return profile(normalize(sql), () -> delegate.execute(sql));
+        }
+
+        @Override
+        public boolean execute(String sql, int autoGeneratedKeys) throws SQLException {
+            return profile(normalize(sql), () -> delegate.execute(sql, autoGeneratedKeys));
+        }
+
+        @Override
+        public boolean execute(String sql, int[] columnIndexes) throws SQLException {
+            return profile(normalize(sql), () -> delegate.execute(sql, columnIndexes));
+        }
+
+        @Override
+        public boolean execute(String sql, String[] columnNames) throws SQLException {
+            return profile(normalize(sql), () -> delegate.execute(sql, columnNames));
+        }
+
+        @Override
+        public void addBatch(String sql) throws SQLException {
+            delegate.addBatch(sql);
+            if (batchSql == null) {
+                batchSql = sql;
+            }
+        }
+
+        @Override
+        public void clearBatch() throws SQLException {
+            delegate.clearBatch();
+            batchSql = null;
+        }
+
+        @Override
+        public int[] executeBatch() throws SQLException {
+            String sql = normalize(batchSql);
+            batchSql = null;
+            return profile(sql, delegate::executeBatch);
+        }
+
+        @Override
+        public long[] executeLargeBatch() throws SQLException {
+            String sql = normalize(batchSql);
+            batchSql = null;
+            return profile(sql, delegate::executeLargeBatch);
+        }
+    }
+
+    /**
+     * Prepared statement, SQL is normalized once on the first execution.
+     */
+    private class ProfiledPreparedStatement extends DelegatingPreparedStatement<PreparedStatement> {
+        private final String sql;
+        private String normalized;
+
+        ProfiledPreparedStatement(Connection connection, PreparedStatement statement, String sql) {
+            super(connection, statement);
+            this.sql = sql;
+        }
+
+        private String key() {
+            if (normalized == null) {
+                normalized = normalize(sql);
+            }
+            return normalized;
+        }
+
+        @Override
+        public ResultSet executeQuery() throws SQLException {
+            return profile(key(), delegate::executeQuery);
+        }
+
+        @Override
+        public int executeUpdate() throws SQLException {
+            return profile(key(), delegate::executeUpdate);
+        }
+
+        @Override
+        public long executeLargeUpdate() throws SQLException {
+            return profile(key(), delegate::executeLargeUpdate);
+        }
+
+        @Override
+        public boolean execute() throws SQLException {
+            return profile(key(), delegate::execute);
+        }
+
+        @Override
+        public int[] executeBatch() throws SQLException {
+            return profile(key(), delegate::executeBatch);
+        }
+
+        @Override
+        public long[] executeLargeBatch() throws SQLException {
+            return profile(key(), delegate::executeLargeBatch);
+        }
+    }
+
+    /**
+     * Callable statement, SQL is normalized once on the first execution.
+     */
+    private class ProfiledCallableStatement extends DelegatingCallableStatement {
+        private final String sql;
+        private String normalized;
+
+        ProfiledCallableStatement(Connection connection, CallableStatement statement, String sql) {
+            super(connection, statement);
+            this.sql = sql;
+        }
+
+        private String key() {
+            if (normalized == null) {
+                normalized = normalize(sql);
+            }
+            return normalized;
+        }
+
+        @Override
+        public ResultSet executeQuery() throws SQLException {
+            return profile(key(), delegate::executeQuery);
+        }
+
+        @Override
+        public int executeUpdate() throws SQLException {
+            return profile(key(), delegate::executeUpdate);
+        }
+
+        @Override
+        public long executeLargeUpdate() throws SQLException {
+            return profile(key(), delegate::executeLargeUpdate);
+        }
+
+        @Override
+        public boolean execute() throws SQLException {
+            return profile(key(), delegate::execute);
+        }
+
+        @Override
+        public int[] executeBatch() throws SQLException {
+            return profile(key(), delegate::executeBatch);
+        }
+
+        @Override
+        public long[] executeLargeBatch() throws SQLException {
+            return profile(key(), delegate::executeLargeBatch);
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package com.github.skopylov58.jdbc.pool;
+
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-connection cache of prepared statements with LRU eviction.
+ *
+ * Statement is removed from the cache while it is used by the client,
+ * and returned back to the cache when client closes it. On return, parameters and pending batch are cleared
+ * and open result set is closed. Statement which properties like max rows or query timeout were changed
+ * by the client, or which was marked as not poolable, is physically closed instead.
+ * Statements evicted from the cache are physically closed.
+ *
+ * Like the JDBC connection itself, the cache is not thread safe
+ * and should be used by the single thread at time.
+ *
+ * @author skopylov@gmail.com
+ *
+ */
+class StatementCache {
+
+    private static final Logger logger = System.getLogger(StatementCache.class.getName());
+
+    /** Marks statement creation argument which was not specified by the client. */
+    static final int UNSPECIFIED = Integer.MIN_VALUE;
+
+    private final int maxSize;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LinkedHashMap<Key, PreparedStatement> cache = new LinkedHashMap<>();
+
+    /**
+     * Statement factory.
+     */
+    @FunctionalInterface
+    interface StatementFactory {
+        PreparedStatement create() throws SQLException;
+    }
+
+    /**
+     * Cache key, consists of the SQL and all statement creation arguments.
+     */
+    record Key(String sql,
+            int resultSetType,
+            int resultSetConcurrency,
+            int resultSetHoldability,
+            int autoGeneratedKeys,
+            int[] columnIndexes,
+            String[] columnNames) {
+
+        Key(String sql) {
+            this(sql, UNSPECIFIED, UNSPECIFIED, UNSPECIFIED, UNSPECIFIED, null, null);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key other
+                    && sql.equals(other.sql)
+                    && resultSetType == other.resultSetType
+                    && resultSetConcurrency == other.resultSetConcurrency
+                    && resultSetHoldability == other.resultSetHoldability
+                    && autoGeneratedKeys == other.autoGeneratedKeys
+                    && Arrays.equals(columnIndexes, other.columnIndexes)
+                    && Arrays.equals(columnNames, other.columnNames);
+        }
+
+        @Override
+        public int hashCode() {
+            int h = sql.hashCode();
+            h = 31 * h + resultSetType;
+            h = 31 * h + resultSetConcurrency;
+            h = 31 * h + resultSetHoldability;
+            h = 31 * h + autoGeneratedKeys;
+            h = 31 * h + Arrays.hashCode(columnIndexes);
+            return 31 * h + Arrays.hashCode(columnNames);
+        }
+
+        @Override
+        public String toString() {
+            return "Key[" + sql + "]";
+        }
+    }
+
+    /**
+     * Constructor.
+     * @param maxSize max number of cached statements
+     * @param hits cache hits counter
+     * @param misses cache misses counter
+     */
+    StatementCache(int maxSize, LongAdder hits, LongAdder misses) {
+        this.maxSize = maxSize;
+        this.hits = hits;
+        this.misses = misses;
+    }
+
+    /**
+     * Gets statement from the cache or creates new one.
+     * @param connection pooled connection
+     * @param key cache key
+     * @param factory creates new statement on cache miss
+     * @return prepared statement which returns to the cache on close
+     * @throws SQLException if statement could not be created
+     */
+    PreparedStatement prepare(Connection connection, Key key, StatementFactory factory) throws SQLException {
+        PreparedStatement ps = cache.remove(key);
+        if (ps == null) {
+            misses.increment();
+            ps = factory.create();
+        } else {
+            hits.increment();
+        }
+        return new CachedPreparedStatement(connection, ps, key);
+    }
+
+    /**
+     * Returns statement to the cache, evicts least recently used statement if cache is full.
+     * @param key cache key
+     * @param ps statement
+     */
+    private void put(Key key, PreparedStatement ps) {
+        PreparedStatement prev = cache.put(key, ps);
+        if (prev != null) {
+            closeQuietly(prev);
+        }
+        if (cache.size() > maxSize) {
+            Iterator<Map.Entry<Key, PreparedStatement>> eldest = cache.entrySet().iterator();
+            closeQuietly(eldest.next().getValue());
+            eldest.remove();
+        }
+    }
+
+    /**
+     * @return number of cached statements
+     */
+    int size() {
+        return cache.size();
+    }
+
+    private static void closeQuietly(Statement s) {
+        try {
+            s.close();
+        } catch (SQLException e) {
+            logger.log(Level.TRACE, "Error closing statement", e);
+        }
+    }
+
+    /**
+     * Cached prepared statement, overrides {@link #close()} to return statement to the cache.
+     * Calls after close are refused, as the cache could give driver's statement to another client.
+     */
+    class CachedPreparedStatement extends DelegatingPreparedStatement<PreparedStatement> {
+
+        private final Key key;
+        private boolean closed;
+        private boolean modified; //statement properties differ from the defaults
+        private ResultSet resultSet;
+
+        CachedPreparedStatement(Connection connection, PreparedStatement statement, Key key) {
+            super(connection, statement);
+            this.key = key;
+        }
+
+        @Override
+        public void close() throws SQLException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                if (delegate.isClosed()) {
+                    return;
+                }
+                if (modified) {
+                    delegate.close();
+                    return;
+                }
+                closeResultSets();
+                delegate.clearBatch();
+                delegate.clearParameters();
+                if (delegate.isClosed()) {
+                    return; //closed on completion of the result set
+                }
+            } catch (SQLException e) {
+                closeQuietly(delegate);
+                return;
+            }
+            put(key, delegate);
+        }
+
+        private void closeResultSets() throws SQLException {
+            if (resultSet != null) {
+                resultSet.close();
+                resultSet = null;
+            }
+            ResultSet current = delegate.getResultSet();
+            if (current != null) {
+                current.close();
+            }
+        }
+
+        @Override
+        public boolean isClosed() throws SQLException {
+            return closed || delegate.isClosed();
+        }
+
+        @Override
+        PreparedStatement checkOpen() throws SQLException {
+            if (closed) {
+                throw new SQLException("Statement is closed"); //driver's statement could be already reused
+            }
+            return delegate;
+        }
+
+        @Override
+        public ResultSet executeQuery() throws SQLException {
+            resultSet = checkOpen().executeQuery();
+            return resultSet;
+        }
+
+        @Override
+        public void setMaxFieldSize(int max) throws SQLException {
+            modified = true;
+            checkOpen().setMaxFieldSize(max);
+        }
+
+        @Override
+        public void setMaxRows(int max) throws SQLException {
+            modified = true;
+            checkOpen().setMaxRows(max);
+        }
+
+        @Override
+        public void setLargeMaxRows(long max) throws SQLException {
+            modified = true;
+            checkOpen().setLargeMaxRows(max);
+        }
+
+        @Override
+        public void setEscapeProcessing(boolean enable) throws SQLException {
+            modified = true;
+            checkOpen().setEscapeProcessing(enable);
+        }
+
+        @Override
+        public void setQueryTimeout(int seconds) throws SQLException {
+            modified = true;
+            checkOpen().setQueryTimeout(seconds);
+        }
+
+        @Override
+        public void setCursorName(String name) throws SQLException {
+            modified = true;
+            checkOpen().setCursorName(name);
+        }
+
+        @Override
+        public void setFetchDirection(int direction) throws SQLException {
+            modified = true;
+            checkOpen().setFetchDirection(direction);
+        }
+
+        @Override
+        public void setFetchSize(int rows) throws SQLException {
+            modified = true;
+            checkOpen().setFetchSize(rows);
+        }
+
+        @Override
+        public void setPoolable(boolean poolable) throws SQLException {
+            modified |= !poolable;
+            checkOpen().setPoolable(poolable);
+        }
+
+        @Override
+        public void closeOnCompletion() throws SQLException {
+            modified = true;
+            checkOpen().closeOnCompletion();
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package com.github.skopylov58.jdbc.pool;
+
+import java.lang.System.Logger;
+import java.lang.System.Logger.Level;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+
+/**
+ * Per-connection registry of the statements given to the client during current checkout.
+ *
+ * Statements are kept in the array, each statement knows its index,
+ * so statement is registered and unregistered in O(1) by swapping with the last one.
+ * Statements still open when connection is returned to the pool are closed by {@link #closeAll()},
+ * which closes their result sets as well.
+ * <p>
+ * Like the JDBC connection itself, the tracker is not thread safe
+ * and should be used by the single thread at time.
+ *
+ * @author skopylov@gmail.com
+ *
+ */
+class StatementTracker {
+
+    private static final Logger logger = System.getLogger(StatementTracker.class.getName());
+
+    private Tracked[] statements = new Tracked[8];
+    private int size;
+
+    /**
+     * Tracked statement.
+     */
+    private interface Tracked {
+        int getIndex();
+        void setIndex(int index);
+        /**
+         * Closes statement on behalf of the client.
+         * @return true if statement was open
+         */
+        boolean closeLeaked();
+    }
+
+    Statement track(Connection connection, Statement statement) {
+        return add(new TrackedStatement(connection, statement));
+    }
+
+    PreparedStatement track(Connection connection, PreparedStatement statement) {
+        return add(new TrackedPreparedStatement(connection, statement));
+    }
+
+    CallableStatement track(Connection connection, CallableStatement statement) {
+        return add(new TrackedCallableStatement(connection, statement));
+    }
+
+    private <T extends Tracked> T add(T t) {
+        if (size == statements.length) {
+            statements = Arrays.copyOf(statements, size * 2);
+        }
+        t.setIndex(size);
+        statements[size++] = t;
+        return t;
+    }
+
+    private void remove(Tracked t) {
+        int i = t.getIndex();
+        if (i < 0 || i >= size || statements[i] != t) {
+            return;
+        }
+        Tracked last = statements[--size];
+        statements[i] = last;
+        last.setIndex(i);
+        statements[size] = null;
+        t.setIndex(-1);
+    }
+
+    /**
+     * Closes all statements which client left open.
+     * @return number of closed statements
+     */
+    int closeAll() {
+        int leaked = 0;
+        while (size > 0) {
+            Tracked t = statements[--size];
+            statements[size] = null;
+            t.setIndex(-1);
+            if (t.closeLeaked()) {
+                leaked++;
+            }
+        }
+        return leaked;
+    }
+
+    /**
+     * @return number of open statements
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Refuses calls on the closed statement, as driver's statement could be given to another client
+     * by the statement cache after the connection was returned to the pool.
+     * @param closed true if statement wrapper is closed
+     * @param delegate driver's statement
+     * @return driver's statement
+     * @throws SQLException if statement wrapper is closed
+     */
+    private static <S extends Statement> S openOrThrow(boolean closed, S delegate) throws SQLException {
+        if (closed) {
+            throw new SQLException("Statement is closed");
+        }
+        return delegate;
+    }
+
+    private static boolean closeQuietly(Statement s) {
+        try {
+            if (s.isClosed()) {
+                return false; //closed by the driver, e.g. closeOnCompletion
+            }
+            s.close();
+        } catch (SQLException e) {
+            logger.log(Level.TRACE, "Error closing statement", e);
+        }
+        return true;
+    }
+
+    private class TrackedStatement extends DelegatingStatement<Statement> implements Tracked {
+        private int index = -1;
+        private boolean closed;
+
+        TrackedStatement(Connection connection, Statement statement) {
+            super(connection, statement);
+        }
+
+        @Override
+        public int getIndex() {
+            return index;
+        }
+
+        @Override
+        public void setIndex(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public boolean closeLeaked() {
+            closed = true;
+            return closeQuietly(delegate);
+        }
+
+        @Override
+        public void close() throws SQLException {
+            if (!closed) {
+                closed = true;
+                remove(this);
+                delegate.close();
+            }
+        }
+
+        @Override
+        public boolean isClosed() throws SQLException {
+            return closed || delegate.isClosed();
+        }
+
+        @Override
+        Statement checkOpen() throws SQLException {
+            return openOrThrow(closed, delegate);
+        }
+    }
+
+    private class TrackedPreparedStatement extends DelegatingPreparedStatement<PreparedStatement> implements Tracked {
+        private int index = -1;
+        private boolean closed;
+
+        TrackedPreparedStatement(Connection connection, PreparedStatement statement) {
+            super(connection, statement);
+        }
+
+        @Override
+        public int getIndex() {
+            return index;
+        }
+
+        @Override
+        public void setIndex(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public boolean closeLeaked() {
+            closed = true;
+            return closeQuietly(delegate);
+        }
+
+        @Override
+        public void close() throws SQLException {
+            if (!closed) {
+                closed = true;
+                remove(this);
+                delegate.close();
+            }
+        }
+
+        @Override
+        public boolean isClosed() throws SQLException {
+            return closed || delegate.isClosed();
+        }
+
+        @Override
+        PreparedStatement checkOpen() throws SQLException {
+            return openOrThrow(closed, delegate);
+        }
+    }
+
+    private class TrackedCallableStatement extends DelegatingCallableStatement implements Tracked {
+        private int index = -1;
+        private boolean closed;
+
+        TrackedCallableStatement(Connection connection, CallableStatement statement) {
+            super(connection, statement);
+        }
+
+        @Override
+        public int getIndex() {
+            return index;
+        }
+
+        @Override
+        public void setIndex(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public boolean closeLeaked() {
+            closed = true;
+            return closeQuietly(delegate);
+        }
+
+        @Override
+        public void close() throws SQLException {
+            if (!closed) {
+                closed = true;
+                remove(this);
+                delegate.close();
+            }
+        }
+
+        @Override
+        public boolean isClosed() throws SQLException {
+            return closed || delegate.isClosed();
+        }
+
+        @Override
+        CallableStatement checkOpen() throws SQLException {
+            return openOrThrow(closed, delegate);
+        }
+    }
+}
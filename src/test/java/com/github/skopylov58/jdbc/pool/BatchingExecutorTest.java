@@ -0,0 +1,91 @@
+package com.github.skopylov58.jdbc.pool;
+
+import static org.junit.Assert.*;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.Test;
+
+public class BatchingExecutorTest {
+
+    @Test
+    public void testBatching() throws Exception {
+        SimpleJDBCConnectionPool pool = new SimpleJDBCConnectionPool("jdbc:h2:mem:batching");
+        pool.configure(c -> c.poolSize = 2);
+        assertTrue(pool.start(Duration.ofSeconds(5), 2));
+        try (Connection c = pool.getConnection()) {
+            c.createStatement().execute("CREATE TABLE events (id INT PRIMARY KEY, name VARCHAR(20))");
+        }
+
+        BatchingExecutor executor = new BatchingExecutor(pool);
+        executor.configure(c -> {
+            c.batchSize = 50;
+            c.linger = Duration.ofMillis(10);
+        });
+        executor.start();
+
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            futures.add(executor.submit("INSERT INTO events VALUES (?, ?)", i, "event" + i));
+        }
+        CompletableFuture<Integer> duplicate = executor.submit("INSERT INTO events VALUES (?, ?)", 0, "duplicate");
+        executor.stop();
+
+        for (CompletableFuture<Integer> f : futures) {
+            assertEquals(1, f.get().intValue());
+        }
+        try {
+            duplicate.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof SQLException);
+        }
+        try (Connection c = pool.getConnection();
+                ResultSet rs = c.createStatement().executeQuery("SELECT COUNT(*) FROM events")) {
+            rs.next();
+            assertEquals(1000, rs.getInt(1));
+        }
+        pool.stop();
+    }
+
+    @Test
+    public void testOrder() throws Exception {
+        SimpleJDBCConnectionPool pool = new SimpleJDBCConnectionPool("jdbc:h2:mem:batching_order");
+        pool.configure(c -> c.poolSize = 1);
+        assertTrue(pool.start(Duration.ofSeconds(5), 1));
+        try (Connection c = pool.getConnection()) {
+            c.createStatement().execute("CREATE TABLE items (id INT PRIMARY KEY, name VARCHAR(20))");
+        }
+
+        BatchingExecutor executor = new BatchingExecutor(pool);
+        executor.configure(c -> c.linger = Duration.ofMillis(100));
+        executor.start();
+        executor.submit("INSERT INTO items VALUES (?, ?)", 1, "a");
+        CompletableFuture<Integer> update = executor.submit("UPDATE items SET name = ?", "updated");
+        executor.submit("INSERT INTO items VALUES (?, ?)", 2, "b");
+        executor.stop();
+
+        assertEquals(1, update.get().intValue());
+        try (Connection c = pool.getConnection();
+                ResultSet rs = c.createStatement().executeQuery("SELECT name FROM items ORDER BY id")) {
+            assertTrue(rs.next());
+            assertEquals("updated", rs.getString(1));
+            assertTrue(rs.next());
+            assertEquals("b", rs.getString(1));
+        }
+        try {
+            executor.submit("INSERT INTO items VALUES (?, ?)", 3, "c").get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof SQLException);
+        }
+        pool.stop();
+    }
+}
@@ -5,10 +5,15 @@ import static org.junit.Assert.*;
 import java.sql.SQLException;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.IntStream;
 
 import javax.sql.DataSource;
 
+import org.junit.Assume;
 import org.junit.Test;
 
 import com.mchange.v2.c3p0.ComboPooledDataSource;
@@ -41,9 +46,68 @@ public class BenchmarkTest {
         foo("C3p0", cpds);
     }
 
+    /**
+     * Many virtual thread clients against small pools, requires Java 21.
+     */
+    @Test
+    public void testVirtualThreads() throws Exception {
+        ExecutorService probe = newVirtualThreadExecutor();
+        Assume.assumeNotNull(probe);
+        probe.shutdown();
+
+        int clients = 10_000;
+        int checkouts = 20;
+        for (int poolSize : new int[] {5, 20}) {
+            SimpleJDBCConnectionPool pool = new SimpleJDBCConnectionPool(H2);
+            pool.configure(c -> {
+                c.poolSize = poolSize;
+                c.validateConnectionOnCheckout = false;
+                c.clientTimeout = Duration.ofSeconds(60);
+            });
+            assertTrue(pool.start(Duration.ofSeconds(10), poolSize));
+
+            AtomicInteger failures = new AtomicInteger();
+            ExecutorService executor = newVirtualThreadExecutor();
+            Instant start = Instant.now();
+            for (int i = 0; i < clients; i++) {
+                executor.execute(() -> {
+                    for (int j = 0; j < checkouts; j++) {
+                        try {
+                            pool.getConnection().close();
+                        } catch (SQLException e) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                });
+            }
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(5, TimeUnit.MINUTES));
+            Duration duration = Duration.between(start, Instant.now());
+
+            PoolMetrics.HistogramSnapshot wait = pool.getMetrics().getWaitTime().snapshot();
+            System.out.println("Virtual threads " + clients + ", pool size " + poolSize
+                    + ", duration=" + duration
+                    + ", throughput=" + clients * checkouts * 1000L / Math.max(1, duration.toMillis()) + "/s"
+                    + ", p99 wait=" + Duration.ofNanos(wait.p99()));
+            assertEquals(0, failures.get());
+            pool.stop();
+        }
+    }
+
+    /**
+     * @return virtual thread per task executor or null if virtual threads are not available
+     */
+    static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
     void foo(String poolName, DataSource ds) throws Exception {
         System.out.println("Running bench for pool " + poolName);
-        int [] numOfThreads = new int[] {5, 10, 15};
+        int [] numOfThreads = new int[] {5, 10, 15, 64};
         for (int i = 0; i < numOfThreads.length; i++) {
             Duration duration = bench(ds, numOfThreads[i], 1_000);
             System.out.println("Num of threads " + numOfThreads[i] + " duration=" + duration);
@@ -0,0 +1,40 @@
+package com.github.skopylov58.jdbc.pool;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class CircuitBreakerTest {
+
+    @Test
+    public void testStates() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker();
+        assertFalse(breaker.recordFailure(2));
+        assertFalse(breaker.recordSuccess());
+        assertFalse(breaker.recordFailure(2));
+        assertTrue(breaker.recordFailure(2));
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertTrue(breaker.isOpen());
+        assertFalse(breaker.recordFailure(2));
+
+        assertTrue(breaker.tryHalfOpen());
+        assertFalse(breaker.tryHalfOpen());
+        assertTrue(breaker.isOpen());
+        assertTrue(breaker.recordFailure(2));
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        assertTrue(breaker.tryHalfOpen());
+        assertTrue(breaker.recordSuccess());
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertFalse(breaker.isOpen());
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker();
+        for (int i = 0; i < 100; i++) {
+            assertFalse(breaker.recordFailure(0));
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+}
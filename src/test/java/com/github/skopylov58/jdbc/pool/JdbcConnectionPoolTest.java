@@ -1,100 +1,681 @@
-package com.github.skopylov58.jdbc.pool;
-
-import static org.junit.Assert.*;
-
-import java.sql.Connection;
-import java.sql.SQLException;
-import java.time.Duration;
-
-import org.junit.Test;
-
-public class JdbcConnectionPoolTest {
-
-    String h2 = "jdbc:h2:mem:test_mem";
-    
-    @Test
-    public void test0() throws Exception {
-        SimpleJDBCConnectionPool pool = new SimpleJDBCConnectionPool(h2);
-        pool.start();
-        Connection connection = pool.getConnection();
-        assertNotNull(connection);
-        connection.close();
-        pool.stop();
-    }
-
-    @Test
-    public void test1() throws Exception {
-        SimpleJDBCConnectionPool pool = new SimpleJDBCConnectionPool(h2);
-        pool.configure(c -> c.poolSize = 2);
-        pool.start();
-        
-        Connection connection = pool.getConnection();
-        assertNotNull(connection);
-        
-        Connection connection2 = pool.getConnection();
-        assertNotNull(connection2);
-
-        try {
-            Connection connection3 = pool.getConnection();
-            fail();
-        } catch (SQLException e) {
-            //expected
-            System.out.println(e.getMessage());
-        }
-        
-        connection.close();
-        connection2.close();
-        pool.stop();
-    }
-    
-    @Test
-    public void testWrapper() throws Exception {
-        SimpleJDBCConnectionPool pool = new SimpleJDBCConnectionPool(h2);
-        pool.start();
-        Connection connection = pool.getConnection();
-        Connection unwraped = connection.unwrap(Connection.class);
-        assertEquals("org.h2.jdbc.JdbcConnection", unwraped.getClass().getName());
-        connection.close();
-        pool.stop();
-    }
-    
-    @Test
-    public void testOrphan() throws Exception {
-        SimpleJDBCConnectionPool pool = new SimpleJDBCConnectionPool(h2);
-        pool.configure(c -> {
-            c.detectOrphanConnections = true;
-            c.orphanTimeout = Duration.ofSeconds(1);
-        });
-        pool.start();
-        Connection connection = pool.getConnection();
-        Thread.sleep(3000);
-        connection.close();
-        pool.stop();
-    }
-    
-    public void usage() {
-        SimpleJDBCConnectionPool pool = new SimpleJDBCConnectionPool("jdbc:mysql:///");
-        pool.configure(c -> {
-            c.poolSize = 10;
-            c.clientTimeout = Duration.ofSeconds(30);
-            c.retryCount = 1000;
-            c.retryDelay = Duration.ofSeconds(1);
-            c.validateConnectionOnCheckout = true;
-            c.connectionValidationTimeout = Duration.ofSeconds(3);
-            c.detectOrphanConnections = true;
-            c.orphanTimeout = Duration.ofSeconds(1);
-        });
-        pool.start();
-        //...
-        try(Connection connection = pool.getConnection()) {
-            //use connection here
-        } catch (SQLException e) {
-            
-        }
-        //connection will be closed and returned to the pool after curly brace above
-        //...
-        pool.stop();
-    }
-    
-    
-}
+package com.github.skopylov58.jdbc.pool;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.Attribute;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+public class JdbcConnectionPoolTest {
+
+    String h2 = "jdbc:h2:mem:test_mem";
+    
+    @Test
+    public void test0() throws Exception {
+        SimpleJDBCConnectionPool pool = new SimpleJDBCConnectionPool(h2);
+        pool.start();
+        Connection connection = pool.getConnection();
+        assertNotNull(connection);
+        connection.close();
+        pool.stop();
+    }
+
+    @Test
+    public void test1() throws Exception {
+        SimpleJDBCConnectionPool pool = new SimpleJDBCConnectionPool(h2);
+        pool.configure(c -> c.poolSize = 2);
+        pool.start();
+        
+        Connection connection = pool.getConnection();
+        assertNotNull(connection);
+        
+        Connection connection2 = pool.getConnection();
+        assertNotNull(connection2);
+
+        try {
+            Connection connection3 = pool.getConnection();
+            fail();
+        } catch (SQLException e) {
+            //expected
+            System.out.println(e.getMessage());
+        }
+        
+        connection.close();
+        connection2.close();
+        pool.stop();
+    }
+    
+    @Test
+    public void testWrapper() throws Exception {
+        SimpleJDBCConnectionPool pool = new SimpleJDBCConnectionPool(h2);
+        pool.start();
+        Connection connection = pool.getConnection();
+        Connection unwraped = connection.unwrap(Connection.class);
+        assertEquals("org.h2.jdbc.JdbcConnection", unwraped.getClass().getName());
+        connection.close();
+        pool.stop();
+    }
+    
+    @Test
+    public void testOrphan() throws Exception {
+        SimpleJDBCConnectionPool pool = new SimpleJDBCConnectionPool(h2);
+        pool.configure(c -> {
+            c.detectOrphanConnections = true;
+            c.orphanTimeout = Duration.ofSeconds(1);
+        });
+        pool.start();
+        Connection connection = pool.getConnection();
+        Thread.sleep(3000);
+        connection.close();
+        pool.stop();
+    }
+    
+    @Test
+    public void testStatementCache() throws Exception {
+        SimpleJDBCConnectionPool pool = new SimpleJDBCConnectionPool(h2);
+        pool.configure(c -> {
+            c.poolSize = 1;
+            c.statementCacheSize = 2;
+        });
+        pool.start();
+        for (int i = 0; i < 3; i++) {
+            try (Connection connection = pool.getConnection()) {
+                PreparedStatement ps = connection.prepareStatement("select 1");
+                ps.executeQuery().close();
+                ps.close();
+                assertTrue(ps.isClosed());
+                assertSame(connection, ps.getConnection());
+            }
+        }
+        assertEquals(1, pool.getStatementCacheMisses());
+        assertEquals(2, pool.getStatementCacheHits());
+        pool.stop();
+    }
+
+    @Test
+    public void testStatementCacheReset() throws Exception {
+        SimpleJDBCConnectionPool pool = new SimpleJDBCConnectionPool(h2);
+        pool.configure(c -> {
+            c.poolSize = 1;
+            c.statementCacheSize = 2;
+        });
+        pool.start();
+        String insert = "insert into cache_reset values (?)";
+        try (Connection connection = pool.getConnection()) {
+            try (Statement st = connection.createStatement()) {
+                st.execute("create table cache_reset (id int)");
+            }
+            PreparedStatement ps = connection.prepareStatement(insert);
+            ps.setInt(1, 1);
+            ps.addBatch();
+            ps.close(); //batch is abandoned
+        }
+        try (Connection connection = pool.getConnection()) {
+            PreparedStatement ps = connection.prepareStatement(insert);
+            assertEquals(0, ps.executeBatch().length);
+            ps.setMaxRows(1);
+            ps.close(); //not cached as max rows is changed
+            ps = connection.prepareStatement(insert);
+            assertEquals(0, ps.getMaxRows());
+            ps.close();
+            try (Statement st = connection.createStatement()) {
+                st.execute("drop table cache_reset");
+            }
+        }
+        assertEquals(2, pool.getStatementCacheMisses());
+        assertEquals(1, pool.getStatementCacheHits());
+        pool.stop();
+    }
+
+    @Test
+    public void testStaleCachedStatement() throws Exception {
+        SimpleJDBCConnectionPool pool = new SimpleJDBCConnectionPool("jdbc:h2:mem:stale_cached");
+        pool.configure(c -> {
+            c.poolSize = 1;
+            c.statementCacheSize = 2;
+        });
+        assertTrue(pool.start(Duration.ofSeconds(5), 1));
+        try {
+            String insert = "insert into stale_cached values (?)";
+            try (Connection connection = pool.getConnection()) {
+                connection.createStatement().execute("create table stale_cached (id int)");
+                PreparedStatement stale = connection.prepareStatement(insert);
+                stale.close();
+                PreparedStatement ps = connection.prepareStatement(insert); //same driver's statement
+                ps.setInt(1, 42);
+                try {
+                    stale.setInt(1, 7);
+                    fail();
+                } catch (SQLException e) {
+                    //expected, statement is closed
+                }
+                ps.executeUpdate();
+                ps.close();
+                try (ResultSet rs = connection.createStatement().executeQuery("select id from stale_cached")) {
+                    assertTrue(rs.next());
+                    assertEquals(42, rs.getInt(1));
+                }
+            }
+            assertEquals(1, pool.getStatementCacheHits());
+        } finally {
+            pool.stop();
+        }
+    }
+
+    @Test
+    public void testStatementTracking() throws Exception {
+        SimpleJDBCConnectionPool pool = new SimpleJDBCConnectionPool(h2);
+        pool.configure(c -> c.poolSize = 1);
+        assertTrue(pool.start(Duration.ofSeconds(5), 1));
+        Connection connection = pool.getConnection();
+        Statement leaked = connection.createStatement();
+        ResultSet rs = leaked.executeQuery("SELECT 1");
+        PreparedStatement closed = connection.prepareStatement("SELECT 1");
+        closed.close();
+        connection.close();
+        assertTrue(leaked.isClosed());
+        assertTrue(rs.isClosed());
+        assertEquals(1, pool.getMetrics().snapshot().leakedStatements());
+        leaked.close();
+        pool.stop();
+    }
+
+    @Test
+    public void testLeakedStatementUse() throws Exception {
+        SimpleJDBCConnectionPool pool = new SimpleJDBCConnectionPool("jdbc:h2:mem:leaked_use");
+        pool.configure(c -> {
+            c.poolSize = 1;
+            c.statementCacheSize = 2;
+        });
+        assertTrue(pool.start(Duration.ofSeconds(5), 1));
+        try {
+            Connection connection = pool.getConnection();
+            Statement leaked = connection.createStatement();
+            PreparedStatement leakedPrepared = connection.prepareStatement("SELECT ?");
+            connection.close();
+            try {
+                leaked.executeQuery("SELECT 1");
+                fail();
+            } catch (SQLException e) {
+                //expected, statement is closed
+            }
+            try {
+                leakedPrepared.setInt(1, 1); //driver's statement is back in the cache
+                fail();
+            } catch (SQLException e) {
+                //expected, statement is closed
+            }
+            assertEquals(2, pool.getMetrics().snapshot().leakedStatements());
+        } finally {
+            pool.stop();
+        }
+    }
+
+    @Test
+    public void testElasticPool() throws Exception {
+        SimpleJDBCConnectionPool pool = new SimpleJDBCConnectionPool(h2);
+        pool.configure(c -> {
+            c.poolSize = 3;
+            c.minIdle = 1;
+            c.idleTimeout = Duration.ofMillis(100);
+        });
+        pool.start();
+        Connection c1 = pool.getConnection();
+        Connection c2 = pool.getConnection();
+        Connection c3 = pool.getConnection();
+        assertEquals(3, pool.getTotalConnections());
+        c1.close();
+        c2.close();
+        c3.close();
+        Thread.sleep(3000);
+        assertEquals(1, pool.getTotalConnections());
+        pool.stop();
+    }
+
+    @Test
+    public void testReturnAfterStop() throws Exception {
+        SimpleJDBCConnectionPool pool = new SimpleJDBCConnectionPool(h2);
+        pool.configure(c -> c.poolSize = 1);
+        pool.start();
+        Connection connection = pool.getConnection();
+        Connection physical = connection.unwrap(Connection.class);
+        pool.stop();
+        assertFalse(physical.isClosed());
+        connection.close();
+        assertTrue(physical.isClosed());
+    }
+
+    @Test
+    public void testAsync() throws Exception {
+        SimpleJDBCConnectionPool pool = new SimpleJDBCConnectionPool(h2);
+        pool.configure(c -> c.poolSize = 1);
+        pool.start();
+        Connection connection = pool.getConnectionAsync(Duration.ofSeconds(10)).get();
+        
+        CompletableFuture<Connection> waiter = pool.getConnectionAsync(Duration.ofSeconds(10));
+        CompletableFuture<Connection> expired = pool.getConnectionAsync(Duration.ofMillis(100));
+        assertFalse(waiter.isDone());
+        try {
+            expired.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof SQLException);
+        }
+        
+        connection.close();
+        assertSame(connection, waiter.getNow(null));
+        waiter.get().close();
+        pool.stop();
+    }
+
+    @Test
+    public void testElasticWarmUp() throws Exception {
+        SimpleJDBCConnectionPool pool = new SimpleJDBCConnectionPool(h2);
+        pool.configure(c -> {
+            c.poolSize = 5;
+            c.minIdle = 2;
+        });
+        assertTrue(pool.start(Duration.ofSeconds(5), 4));
+        assertEquals(2, pool.getTotalConnections());
+        pool.stop();
+    }
+
+    @Test
+    public void testValidationBypass() throws Exception {
+        SimpleJDBCConnectionPool pool = new SimpleJDBCConnectionPool(h2);
+        pool.configure(c -> {
+            c.poolSize = 1;
+            c.validateConnectionOnCheckout = true;
+            c.validationBypassWindow = Duration.ofSeconds(10);
+        });
+        assertTrue(pool.start(Duration.ofSeconds(5), 1));
+        pool.getConnection().close();
+        pool.getConnection().close();
+        assertEquals(0, pool.getMetrics().getValidationTime().getCount());
+        pool.configure(c -> c.validationBypassWindow = Duration.ZERO);
+        pool.getConnection().close();
+        assertEquals(1, pool.getMetrics().getValidationTime().getCount());
+        pool.stop();
+    }
+
+    @Test
+    public void testKeepalive() throws Exception {
+        SimpleJDBCConnectionPool pool = new SimpleJDBCConnectionPool(h2);
+        pool.configure(c -> {
+            c.poolSize = 2;
+            c.keepaliveInterval = Duration.ofMillis(100);
+        });
+        assertTrue(pool.start(Duration.ofSeconds(5), 2));
+        Connection connection = pool.getConnection();
+        Connection physical = connection.unwrap(Connection.class);
+        connection.close();
+        physical.close(); //dead idle connection
+        Thread.sleep(2500);
+        PoolMetrics.Snapshot metrics = pool.getMetrics().snapshot();
+        assertTrue(metrics.validationTime().count() >= 2);
+        assertEquals(1, metrics.validationFailures());
+        assertEquals(3, metrics.connectionsCreated());
+        assertEquals(2, pool.getTotalConnections());
+        pool.stop();
+    }
+
+    @Test
+    public void testWarmUp() throws Exception {
+        SimpleJDBCConnectionPool pool = new SimpleJDBCConnectionPool(h2);
+        pool.configure(c -> {
+            c.poolSize = 5;
+            c.startupParallelism = 2;
+            c.connectionInitSql = "SET SCHEMA PUBLIC";
+        });
+        assertTrue(pool.start(Duration.ofSeconds(10), 5));
+        assertTrue(pool.isReady());
+        assertEquals(5, pool.getIdleConnections());
+        pool.stop();
+    }
+
+    @Test
+    public void testMaxLifetime() throws Exception {
+        SimpleJDBCConnectionPool pool = new SimpleJDBCConnectionPool(h2);
+        pool.configure(c -> {
+            c.poolSize = 2;
+            c.maxLifetime = Duration.ofSeconds(1);
+        });
+        assertTrue(pool.start(Duration.ofSeconds(5), 2));
+        try {
+            Connection connection = pool.getConnection();
+            Connection physical = connection.unwrap(Connection.class);
+            connection.close();
+            long deadline = System.currentTimeMillis() + 5000;
+            while (pool.getMetrics().snapshot().connectionsCreated() < 4 || !physical.isClosed()) {
+                assertTrue(System.currentTimeMillis() < deadline);
+                int total = pool.getTotalConnections();
+                assertTrue("total " + total, total >= 2); //replacement is opened before expired connection is closed
+                assertTrue("total " + total, total <= 4);
+                Thread.sleep(20);
+            }
+            connection = pool.getConnection();
+            assertNotSame(physical, connection.unwrap(Connection.class));
+            connection.close();
+        } finally {
+            pool.stop();
+        }
+    }
+
+    @Test
+    public void testStateReset() throws Exception {
+        SimpleJDBCConnectionPool pool = new SimpleJDBCConnectionPool(h2);
+        pool.configure(c -> c.poolSize = 1);
+        pool.start();
+        Connection connection = pool.getConnection();
+        boolean autoCommit = connection.getAutoCommit();
+        int isolation = connection.getTransactionIsolation();
+        connection.setAutoCommit(!autoCommit);
+        connection.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+        connection.close();
+        
+        connection = pool.getConnection();
+        assertEquals(autoCommit, connection.getAutoCommit());
+        assertEquals(isolation, connection.getTransactionIsolation());
+        connection.close();
+        pool.stop();
+    }
+
+    @Test
+    public void testRollbackOnReturn() throws Exception {
+        SimpleJDBCConnectionPool pool = new SimpleJDBCConnectionPool(h2);
+        pool.configure(c -> c.poolSize = 1);
+        pool.start();
+        Connection connection = pool.getConnection();
+        try (Statement st = connection.createStatement()) {
+            st.execute("create table rollback_on_return (id int)");
+        }
+        //statement re-executed after commit
+        connection.setAutoCommit(false);
+        PreparedStatement ps = connection.prepareStatement("insert into rollback_on_return values (?)");
+        ps.setInt(1, 1);
+        ps.executeUpdate();
+        connection.commit();
+        ps.setInt(1, 2);
+        ps.executeUpdate();
+        connection.close();
+        assertEquals(1, countRows(pool, "rollback_on_return"));
+
+        //statement created before auto-commit was turned off
+        connection = pool.getConnection();
+        Statement st = connection.createStatement();
+        connection.setAutoCommit(false);
+        st.executeUpdate("insert into rollback_on_return values (3)");
+        connection.close();
+        assertEquals(1, countRows(pool, "rollback_on_return"));
+
+        try (Connection c = pool.getConnection(); Statement s = c.createStatement()) {
+            s.execute("drop table rollback_on_return");
+        }
+        pool.stop();
+    }
+
+    private static int countRows(SimpleJDBCConnectionPool pool, String table) throws SQLException {
+        try (Connection c = pool.getConnection();
+                Statement s = c.createStatement();
+                ResultSet rs = s.executeQuery("select count(*) from " + table)) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    @Test
+    public void testCircuitBreakerWakesWaiters() throws Exception {
+        ConnectionFactory h2Factory = ConnectionFactory.of(h2);
+        AtomicBoolean down = new AtomicBoolean();
+        SimpleJDBCConnectionPool pool = new SimpleJDBCConnectionPool(() -> {
+            if (down.get()) {
+                throw new SQLException("Database is down");
+            }
+            return h2Factory.createConnection();
+        });
+        pool.configure(c -> {
+            c.poolSize = 2;
+            c.minIdle = 1;
+            c.circuitBreakerThreshold = 1;
+            c.circuitBreakerOpenTime = Duration.ofSeconds(30);
+            c.clientTimeout = Duration.ofSeconds(10);
+        });
+        assertTrue(pool.start(Duration.ofSeconds(5), 1));
+        Connection connection = pool.getConnection();
+        down.set(true);
+        long start = System.nanoTime();
+        try {
+            pool.getConnection(); //waits, connect of the second connection opens the breaker
+            fail();
+        } catch (SQLTransientConnectionException e) {
+            //expected
+        }
+        assertTrue(System.nanoTime() - start < Duration.ofSeconds(5).toNanos());
+        assertEquals(CircuitBreaker.State.OPEN, pool.getCircuitBreakerState());
+        connection.close();
+        pool.stop();
+    }
+
+    @Test
+    public void testConnectionFactory() throws Exception {
+        Properties props = new Properties();
+        props.put("user", "sa");
+        ConnectionFactory h2Factory = ConnectionFactory.of("jdbc:h2:mem:factory_test", props);
+        AtomicInteger created = new AtomicInteger();
+        SimpleJDBCConnectionPool pool = new SimpleJDBCConnectionPool(() -> {
+            created.incrementAndGet();
+            return h2Factory.createConnection();
+        });
+        pool.configure(c -> c.poolSize = 3);
+        try {
+            assertTrue(pool.start(Duration.ofSeconds(5), 3));
+            assertEquals(3, created.get());
+            try (Connection connection = pool.getConnection()) {
+                assertEquals("SA", connection.getMetaData().getUserName());
+            }
+        } finally {
+            pool.stop();
+        }
+    }
+
+    @Test
+    public void testAdmissionControl() throws Exception {
+        SimpleJDBCConnectionPool pool = new SimpleJDBCConnectionPool(h2);
+        pool.configure(c -> {
+            c.poolSize = 1;
+            c.maxWaiters = 1;
+        });
+        assertTrue(pool.start(Duration.ofSeconds(5), 1));
+        Connection connection = pool.getConnection();
+        CompletableFuture<Connection> waiter = CompletableFuture.supplyAsync(() -> {
+            try {
+                return pool.getConnection(Duration.ofSeconds(5));
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(200);
+        try {
+            pool.getConnection(Duration.ofSeconds(5));
+            fail();
+        } catch (SQLTransientConnectionException e) {
+            //expected
+        }
+        assertEquals(1, pool.getMetrics().snapshot().rejectedCheckouts());
+        connection.close();
+        waiter.get().close();
+
+        long start = System.nanoTime();
+        connection = pool.getConnection();
+        try {
+            pool.getConnection(Duration.ofMillis(200));
+            fail();
+        } catch (SQLException e) {
+            //expected
+        }
+        assertTrue(System.nanoTime() - start < Duration.ofMillis(400).toNanos());
+        connection.close();
+        pool.stop();
+    }
+
+    @Test
+    public void testLazyConnectionBinding() throws Exception {
+        SimpleJDBCConnectionPool pool = new SimpleJDBCConnectionPool(h2);
+        pool.configure(c -> {
+            c.poolSize = 1;
+            c.lazyConnectionBinding = true;
+            c.clientTimeout = Duration.ofMillis(200);
+        });
+        assertTrue(pool.start(Duration.ofSeconds(5), 1));
+        Connection c1 = pool.getConnection();
+        Connection c2 = pool.getConnection();
+        assertEquals(1, pool.getIdleConnections());
+        try (Statement s = c1.createStatement()) {
+            s.execute("SELECT 1");
+            assertEquals(0, pool.getIdleConnections());
+            assertSame(c1, s.getConnection());
+        }
+        assertEquals(1, pool.getIdleConnections());
+
+        c1.setAutoCommit(false);
+        try (Statement s = c1.createStatement()) {
+            s.execute("SELECT 1");
+        }
+        assertEquals(0, pool.getIdleConnections());
+        try {
+            c2.createStatement();
+            fail();
+        } catch (SQLException e) {
+            //expected, physical connection is held by the transaction
+        }
+        c1.commit();
+        c1.setAutoCommit(true);
+        assertEquals(1, pool.getIdleConnections());
+        c2.close();
+        c1.close();
+        pool.stop();
+    }
+
+    @Test
+    public void testMBean() throws Exception {
+        SimpleJDBCConnectionPool pool = new SimpleJDBCConnectionPool(h2);
+        pool.configure(c -> {
+            c.poolSize = 2;
+            c.registerMBean = true;
+            c.poolName = "jmx-test";
+        });
+        assertTrue(pool.start(Duration.ofSeconds(5), 2));
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("com.github.skopylov58.jdbc.pool:type=SimpleJDBCConnectionPool,name=jmx-test");
+        assertEquals(2, server.getAttribute(name, "IdleConnections"));
+
+        server.setAttribute(name, new Attribute("PoolSize", 4));
+        Thread.sleep(500);
+        assertEquals(4, pool.getTotalConnections());
+        server.setAttribute(name, new Attribute("PoolSize", 1));
+        assertEquals(1, pool.getTotalConnections());
+        server.setAttribute(name, new Attribute("ClientTimeoutMillis", 100L));
+        Connection connection = pool.getConnection();
+        try {
+            pool.getConnection();
+            fail();
+        } catch (SQLException e) {
+            //expected, timeout is changed
+        }
+        connection.close();
+        pool.stop();
+        assertFalse(server.isRegistered(name));
+    }
+
+    @Test
+    public void testKeyedPools() throws Exception {
+        Properties props = new Properties();
+        props.put("user", "sa");
+        SimpleJDBCConnectionPool pool = new SimpleJDBCConnectionPool("jdbc:h2:mem:keyed", props);
+        pool.configure(c -> {
+            c.poolSize = 1;
+            c.maxTotalConnections = 2;
+            c.keyedPoolSize = 2;
+        });
+        assertTrue(pool.start(Duration.ofSeconds(5), 1));
+        try (Connection connection = pool.getConnection()) {
+            connection.createStatement().execute("CREATE USER tenant PASSWORD 'secret'");
+        }
+        try (Connection connection = pool.getConnection("sa", "")) {
+            assertEquals("SA", connection.getMetaData().getUserName());
+        }
+        try (Connection connection = pool.getConnection("tenant", "secret")) {
+            assertEquals("TENANT", connection.getMetaData().getUserName());
+        }
+        assertEquals(2, pool.getKeyedPoolCount());
+        assertEquals(2, pool.getMetrics().snapshot().totalConnections());
+        pool.stop();
+    }
+
+    @Test
+    public void testKeyedPoolEviction() throws Exception {
+        Properties props = new Properties();
+        props.put("user", "sa");
+        SimpleJDBCConnectionPool pool = new SimpleJDBCConnectionPool("jdbc:h2:mem:keyed_eviction", props);
+        pool.configure(c -> {
+            c.poolSize = 1;
+            c.keyedMinIdle = 1;
+            c.keyedPoolIdleTimeout = Duration.ofMillis(500);
+        });
+        assertTrue(pool.start(Duration.ofSeconds(5), 1));
+        try (Connection connection = pool.getConnection("sa", "")) {
+            assertEquals("SA", connection.getMetaData().getUserName());
+        }
+        assertEquals(1, pool.getKeyedPoolCount());
+        Thread.sleep(2500);
+        assertEquals(0, pool.getKeyedPoolCount());
+        assertEquals(1, pool.getMetrics().snapshot().totalConnections());
+        try (Connection connection = pool.getConnection("sa", "")) {
+            assertEquals("SA", connection.getMetaData().getUserName());
+        }
+        assertEquals(1, pool.getKeyedPoolCount());
+        pool.stop();
+    }
+
+    public void usage() {
+        SimpleJDBCConnectionPool pool = new SimpleJDBCConnectionPool("jdbc:mysql:///");
+        pool.configure(c -> {
+            c.poolSize = 10;
+            c.clientTimeout = Duration.ofSeconds(30);
+            c.retryCount = 1000;
+            c.retryDelay = Duration.ofSeconds(1);
+            c.validateConnectionOnCheckout = true;
+            c.connectionValidationTimeout = Duration.ofSeconds(3);
+            c.detectOrphanConnections = true;
+            c.orphanTimeout = Duration.ofSeconds(1);
+        });
+        pool.start();
+        //...
+        try(Connection connection = pool.getConnection()) {
+            //use connection here
+        } catch (SQLException e) {
+            
+        }
+        //connection will be closed and returned to the pool after curly brace above
+        //...
+        pool.stop();
+    }
+    
+    
+}
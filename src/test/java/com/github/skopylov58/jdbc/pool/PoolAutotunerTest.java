@@ -0,0 +1,62 @@
+package com.github.skopylov58.jdbc.pool;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class PoolAutotunerTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final long MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private PoolAutotuner newTuner(SimpleJDBCConnectionPool.Config config) {
+        PoolMetrics metrics = new PoolMetrics(() -> 0, () -> 0, () -> 0);
+        return new PoolAutotuner(null, metrics, config);
+    }
+
+    @Test
+    public void testLittlesLaw() {
+        SimpleJDBCConnectionPool.Config config = new SimpleJDBCConnectionPool.Config();
+        PoolAutotuner tuner = newTuner(config);
+        // 1000 checkouts per second held for 20 ms each - 20 busy connections, 24 with headroom
+        int size = 10;
+        size = tuner.decide(size, 1000, 1000, 1000 * 20 * MILLI, 1000, 0, SECOND);
+        assertEquals(14, size);
+        size = tuner.decide(size, 1000, 1000, 1000 * 20 * MILLI, 1000, 0, SECOND);
+        assertEquals(18, size);
+        size = tuner.decide(size, 1000, 1000, 1000 * 20 * MILLI, 1000, 0, SECOND);
+        assertEquals(22, size);
+        size = tuner.decide(size, 1000, 1000, 1000 * 20 * MILLI, 1000, 0, SECOND);
+        assertEquals(24, size);
+        // 25 connections are within hysteresis band of 2
+        assertEquals(24, tuner.decide(size, 1030, 1030, 1030 * 20 * MILLI, 1030, 0, SECOND));
+        // load dropped
+        assertEquals(20, tuner.decide(size, 100, 100, 100 * 20 * MILLI, 100, 0, SECOND));
+        // not enough samples
+        assertEquals(24, tuner.decide(size, 10, 10, 10 * 20 * MILLI, 10, 0, SECOND));
+    }
+
+    @Test
+    public void testExhaustedPool() {
+        SimpleJDBCConnectionPool.Config config = new SimpleJDBCConnectionPool.Config();
+        config.autotuneMaxStep = 10;
+        PoolAutotuner tuner = newTuner(config);
+        // 4 connections held for 10 ms serve 400 checkouts per second, clients wait 15 ms for connection
+        assertEquals(12, tuner.decide(4, 400, 400, 400 * 10 * MILLI, 400, 400 * 15 * MILLI, SECOND));
+    }
+
+    @Test
+    public void testBackoff() {
+        SimpleJDBCConnectionPool.Config config = new SimpleJDBCConnectionPool.Config();
+        PoolAutotuner tuner = newTuner(config);
+        assertEquals(14, tuner.decide(10, 1000, 1000, 1000 * 20 * MILLI, 1000, 0, SECOND));
+        // hold time grew with the pool size - database is saturated
+        assertEquals(10, tuner.decide(14, 1000, 1000, 1000 * 30 * MILLI, 1000, 0, SECOND));
+        for (int i = 0; i < PoolAutotuner.BACKOFF_INTERVALS; i++) {
+            assertEquals(10, tuner.decide(10, 1000, 1000, 1000 * 20 * MILLI, 1000, 0, SECOND));
+        }
+        assertEquals(14, tuner.decide(10, 1000, 1000, 1000 * 20 * MILLI, 1000, 0, SECOND));
+    }
+}
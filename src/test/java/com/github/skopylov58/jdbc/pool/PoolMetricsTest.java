@@ -0,0 +1,35 @@
+package com.github.skopylov58.jdbc.pool;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class PoolMetricsTest {
+
+    @Test
+    public void testBuckets() throws Exception {
+        for (long v = 0; v < 1_000_000; v++) {
+            int i = PoolMetrics.Histogram.bucketIndex(v);
+            assertTrue(v <= PoolMetrics.Histogram.bucketUpperBound(i));
+            if (i > 0) {
+                assertTrue(v > PoolMetrics.Histogram.bucketUpperBound(i - 1));
+            }
+        }
+        int last = PoolMetrics.Histogram.bucketIndex(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, PoolMetrics.Histogram.bucketUpperBound(last));
+    }
+
+    @Test
+    public void testPercentiles() throws Exception {
+        PoolMetrics.Histogram h = new PoolMetrics.Histogram();
+        for (int i = 1; i <= 1000; i++) {
+            h.record(i * 1000L);
+        }
+        PoolMetrics.HistogramSnapshot s = h.snapshot();
+        assertEquals(1000, s.count());
+        assertEquals(500_500, s.mean());
+        assertEquals(1_000_000, s.max());
+        assertEquals(500_000, s.p50(), 500_000 / PoolMetrics.Histogram.SUB_BUCKETS);
+        assertEquals(990_000, s.p99(), 990_000 / PoolMetrics.Histogram.SUB_BUCKETS);
+    }
+}
@@ -0,0 +1,81 @@
+package com.github.skopylov58.jdbc.pool;
+
+import static org.junit.Assert.*;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class ReadWriteRoutingDataSourceTest {
+
+    @Test
+    public void testRouting() throws Exception {
+        SimpleJDBCConnectionPool primary = new SimpleJDBCConnectionPool("jdbc:h2:mem:primary");
+        SimpleJDBCConnectionPool replica1 = new SimpleJDBCConnectionPool("jdbc:h2:mem:replica1");
+        SimpleJDBCConnectionPool replica2 = new SimpleJDBCConnectionPool("jdbc:h2:mem:replica2");
+        ReadWriteRoutingDataSource ds = new ReadWriteRoutingDataSource(primary, List.of(replica1, replica2));
+        ds.start();
+
+        try (Connection c = ds.getConnection(false)) {
+            assertEquals("jdbc:h2:mem:primary", c.getMetaData().getURL());
+        }
+        Set<String> urls = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            try (Connection c = ds.getConnection(true)) {
+                urls.add(c.getMetaData().getURL());
+            }
+        }
+        assertEquals(Set.of("jdbc:h2:mem:replica1", "jdbc:h2:mem:replica2"), urls);
+        ds.stop();
+    }
+
+    @Test
+    public void testEjection() throws Exception {
+        SimpleJDBCConnectionPool primary = new SimpleJDBCConnectionPool("jdbc:h2:mem:primary");
+        SimpleJDBCConnectionPool healthy = new SimpleJDBCConnectionPool("jdbc:h2:mem:replica1");
+        healthy.configure(c -> {
+            c.poolSize = 1;
+            c.clientTimeout = Duration.ofMillis(100);
+        });
+        SimpleJDBCConnectionPool broken = new SimpleJDBCConnectionPool(() -> {
+            throw new SQLException("Replica is down");
+        });
+        broken.configure(c -> {
+            c.retryCount = 1;
+            c.clientTimeout = Duration.ofMillis(100);
+        });
+        ReadWriteRoutingDataSource ds = new ReadWriteRoutingDataSource(primary, List.of(healthy, broken));
+        assertTrue(primary.start(Duration.ofSeconds(5), 1));
+        assertTrue(healthy.start(Duration.ofSeconds(5), 1));
+        broken.start();
+
+        for (int i = 0; i < 20; i++) {
+            try (Connection c = ds.getConnection(true)) {
+                assertEquals("jdbc:h2:mem:replica1", c.getMetaData().getURL());
+            }
+        }
+        assertEquals(1, ds.getHealthyReplicas());
+
+        // busy replica is not ejected
+        Connection held = healthy.getConnection();
+        try {
+            ds.getConnection(true);
+            fail();
+        } catch (SQLException e) {
+            //expected, replica is busy
+        }
+        assertEquals(1, ds.getHealthyReplicas());
+        held.close();
+
+        healthy.stop();
+        try (Connection c = ds.getConnection(true)) {
+            assertEquals("jdbc:h2:mem:primary", c.getMetaData().getURL());
+        }
+        ds.stop();
+    }
+}
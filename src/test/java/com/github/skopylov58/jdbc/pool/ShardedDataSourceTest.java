@@ -0,0 +1,72 @@
+package com.github.skopylov58.jdbc.pool;
+
+import static org.junit.Assert.*;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class ShardedDataSourceTest {
+
+    private static final int KEYS = 10_000;
+
+    private static Map<Integer, String> route(ShardedDataSource ds) throws Exception {
+        Map<Integer, String> routes = new HashMap<>();
+        for (int key = 0; key < KEYS; key++) {
+            routes.put(key, ds.getShard(key));
+        }
+        return routes;
+    }
+
+    @Test
+    public void testRing() throws Exception {
+        ShardedDataSource ds = new ShardedDataSource();
+        for (int i = 0; i < 4; i++) {
+            ds.addShard("shard" + i, new SimpleJDBCConnectionPool("jdbc:h2:mem:shard" + i));
+        }
+        Map<Integer, String> before = route(ds);
+        Map<String, Integer> load = new HashMap<>();
+        before.values().forEach(s -> load.merge(s, 1, Integer::sum));
+        assertEquals(4, load.size());
+        for (int n : load.values()) {
+            assertTrue("uneven distribution " + load, Math.abs(n - KEYS / 4) < KEYS / 4 * 0.3);
+        }
+
+        ds.addShard("shard4", new SimpleJDBCConnectionPool("jdbc:h2:mem:shard4"));
+        Map<Integer, String> after = route(ds);
+        int moved = 0;
+        for (int key = 0; key < KEYS; key++) {
+            if (!before.get(key).equals(after.get(key))) {
+                assertEquals("shard4", after.get(key));
+                moved++;
+            }
+        }
+        assertTrue("moved " + moved, moved > KEYS / 5 * 0.7 && moved < KEYS / 5 * 1.3);
+
+        assertTrue(ds.removeShard("shard4"));
+        assertEquals(before, route(ds));
+        assertEquals(ShardedDataSource.hash("key"), ShardedDataSource.hash("key"));
+        assertEquals(ds.getShard(42), ds.getShard("42"));
+    }
+
+    @Test
+    public void testConnection() throws Exception {
+        ShardedDataSource ds = new ShardedDataSource();
+        ds.configure(c -> c.shardPoolConfig = p -> p.poolSize = 2);
+        ds.addShard("a", "jdbc:h2:mem:sharded_a");
+        ds.addShard("b", "jdbc:h2:mem:sharded_b");
+        ds.start();
+        String shard = ds.getShard("user-1");
+        try (Connection c = ds.getConnection("user-1");
+                ResultSet rs = c.createStatement().executeQuery("SELECT 1")) {
+            assertTrue(rs.next());
+        }
+        assertEquals(1, ds.getShardMetrics().get(shard).checkouts());
+        assertEquals(CircuitBreaker.State.CLOSED, ds.getShardHealth().get(shard));
+        assertEquals(2, ds.getShards().get(shard).getTotalConnections());
+        ds.stop();
+    }
+}
@@ -0,0 +1,42 @@
+package com.github.skopylov58.jdbc.pool;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class SqlProfilerTest {
+
+    @Test
+    public void testNormalize() {
+        assertEquals("SELECT * FROM t WHERE id = ? AND name = ?",
+                SqlProfiler.normalize("SELECT *  FROM t\n WHERE id = 42 AND name = 'O''Brien'"));
+        assertEquals("select a1, \"col 1\" from t where x in (?) and y = ?",
+                SqlProfiler.normalize("select a1, \"col 1\" from t where x in (1, 2, 3) -- comment\n and y = ?"));
+        assertEquals("INSERT INTO t VALUES (?)", SqlProfiler.normalize("/* hint */ INSERT INTO t VALUES (?, ?, ?)"));
+    }
+
+    @Test
+    public void testSpaceSaving() {
+        SqlProfiler profiler = new SqlProfiler(2);
+        for (int i = 0; i < 10; i++) {
+            profiler.record("frequent", 10, 1, false);
+        }
+        profiler.record("rare1", 1000, 0, false);
+        profiler.record("rare2", 5, 0, true);
+        assertEquals(2, profiler.size());
+
+        List<SqlProfiler.Stats> top = profiler.getMostFrequent(2);
+        assertEquals("frequent", top.get(0).sql());
+        assertEquals(10, top.get(0).count());
+        assertEquals(10, top.get(0).rows());
+        assertEquals(10, top.get(0).meanTime());
+        SqlProfiler.Stats rare = top.get(1);
+        assertEquals("rare2", rare.sql());
+        assertEquals(1, rare.countError());
+        assertEquals(1, rare.errors());
+
+        assertEquals("frequent", profiler.getSlowest(1).get(0).sql());
+    }
+}